@@ -6,6 +6,7 @@ import android.support.annotation.IdRes;
 
 import com.squareup.picasso.MemoryPolicy;
 import com.squareup.picasso.NetworkPolicy;
+import com.squareup.picasso.Transformation;
 
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
@@ -28,8 +29,27 @@ public @interface Picasso {
 
     String url() default "";
 
+    /**
+     * Url to use instead of {@link #url()} when the server has several renditions of the image. The
+     * {@code {width}} and {@code {quality}} parameters are filled in at runtime from the measured
+     * bandwidth: smaller, lower quality renditions on slow connections, the full width of the view
+     * on fast ones. Bandwidth is only measured once adaptive loading is enabled with
+     * {@code AutoPicasso.enableAdaptiveLoading}, until then the full quality rendition is used.
+     * <br>
+     * Example: {@code "https://cdn.example.com/photo.jpg?w={width}&q={quality}"}
+     */
+    String adaptiveUrl() default "";
+
     @DrawableRes int drawable() default 0;
 
+    /**
+     * Name of a field, or of a method without parameters, on the target that supplies the image at
+     * runtime: a String url, Uri, File or drawable resource int. A {@code null} value falls back to
+     * {@link #url()} or {@link #drawable()}. The request is not issued again while the view still
+     * shows the image last loaded from the same source.
+     */
+    String source() default "";
+
     @DrawableRes int placeholder() default 0;
 
     @DrawableRes int error() default 0;
@@ -48,8 +68,21 @@ public @interface Picasso {
 
     float[] rotate() default {};
 
+    /**
+     * Transformations applied to this binding, before those passed to {@code AutoPicasso.load}.
+     * Each class needs a public no-argument constructor and a {@link Transformation#key()} that
+     * only depends on its class, since one shared instance is used everywhere it appears.
+     */
+    Class<? extends Transformation>[] transformations() default {};
+
     Bitmap.Config config() default Bitmap.Config.ARGB_8888;
 
+    /**
+     * Pick the config at runtime when {@link #config()} is not set: RGB_565 for opaque sources and
+     * under memory pressure, ARGB_8888 otherwise.
+     */
+    boolean autoConfig() default false;
+
     String stableKey() default "";
 
     com.squareup.picasso.Picasso.Priority priority() default com.squareup.picasso.Picasso.Priority.NORMAL;
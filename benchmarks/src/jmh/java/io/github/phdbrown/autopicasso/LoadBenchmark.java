@@ -0,0 +1,83 @@
+package io.github.phdbrown.autopicasso;
+
+import android.os.Looper;
+import android.view.View;
+
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.Transformation;
+
+import org.objenesis.Objenesis;
+import org.objenesis.ObjenesisStd;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+import io.github.phdbrown.autopicasso.internal.PicassoBatch;
+import io.github.phdbrown.autopicasso.internal.PicassoLoader;
+
+/**
+ * Per-call cost of a generated loader for a view holder with 1, 10 and 50 bindings: resolving its
+ * views, then building a request for each into a new batch. Submitting the batch is left out,
+ * since it needs a main looper. Run with the gc profiler to see allocation per call.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 10:40 AM Feb 26, 2016
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadBenchmark {
+
+    private static final Transformation[] NO_TRANSFORMATIONS = new Transformation[0];
+
+    @Param({"1", "10", "50"})
+    public int bindings;
+
+    private PicassoLoader<Object> loader;
+    private Object target;
+    private View root;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        Objenesis objenesis = new ObjenesisStd();
+        //Picasso's handler only needs a looper to exist. Nothing is posted.
+        Field mainLooper = Looper.class.getDeclaredField("sMainLooper");
+        mainLooper.setAccessible(true);
+        mainLooper.set(null, objenesis.newInstance(Looper.class));
+        //a real instance starts its dispatcher thread. Requests are only built on submit.
+        Picasso.setSingletonInstance(objenesis.newInstance(Picasso.class));
+        Class<?> targetClass = bindings == 1 ? Targets.Bindings1.class
+                : bindings == 10 ? Targets.Bindings10.class : Targets.Bindings50.class;
+        AutoPicasso.INDICES.clear();
+        AutoPicasso.addIndex(new BenchmarkIndex());
+        AutoPicasso.LOADERS.clear();
+        loader = (PicassoLoader<Object>) AutoPicasso.findViewBinderForClass(targetClass);
+        target = targetClass.newInstance();
+        root = StubViews.createRoot(bindings);
+    }
+
+    /** A view holder bound again, whose fields still hold its views. */
+    @Benchmark
+    public PicassoBatch load() {
+        loader.resolve(target, root);
+        PicassoBatch batch = new PicassoBatch();
+        loader.load(target, root, NO_TRANSFORMATIONS, batch);
+        return batch;
+    }
+}
@@ -0,0 +1,69 @@
+package io.github.phdbrown.autopicasso;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link AutoPicasso#findViewBinderForClass(Class)}, warm and cold, through the generated
+ * index and through the reflective fallback. Run with the gc profiler to see allocation per call.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 2:20 PM Feb 22, 2016
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+
+    @Param({"index", "reflection"})
+    public String lookup;
+
+    @Param({"flat", "deep"})
+    public String target;
+
+    private Class<?> targetClass;
+
+    @Setup
+    public void setUp() throws Exception {
+        targetClass = "flat".equals(target) ? Targets.Flat.class : Targets.Level5.class;
+        AutoPicasso.INDICES.clear();
+        if ("index".equals(lookup)) {
+            AutoPicasso.addIndex(new BenchmarkIndex());
+        }
+        AutoPicasso.LOADERS.clear();
+    }
+
+    @Benchmark
+    public Object warm() throws Exception {
+        return AutoPicasso.findViewBinderForClass(targetClass);
+    }
+
+    /** Includes clearing the cache, which is negligible next to a miss. */
+    @Benchmark
+    public Object cold() throws Exception {
+        AutoPicasso.LOADERS.clear();
+        return AutoPicasso.findViewBinderForClass(targetClass);
+    }
+
+    /** A class without generated code anywhere in its hierarchy. */
+    @Benchmark
+    public Object coldUnbound() throws Exception {
+        AutoPicasso.LOADERS.clear();
+        return AutoPicasso.findViewBinderForClass(Targets.Unbound.class);
+    }
+}
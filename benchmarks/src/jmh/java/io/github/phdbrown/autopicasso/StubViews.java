@@ -0,0 +1,76 @@
+package io.github.phdbrown.autopicasso;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.view.View;
+import android.widget.ImageView;
+
+import org.objenesis.Objenesis;
+import org.objenesis.ObjenesisStd;
+
+/**
+ * Views for the plain JVM. They are allocated without running a constructor, since the framework's
+ * need a real Android runtime, and only answer the calls generated loaders make.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 10:40 AM Feb 26, 2016
+ */
+final class StubViews {
+
+    private static final Objenesis OBJENESIS = new ObjenesisStd();
+
+    private StubViews() {
+        //no instance
+    }
+
+    /** @return a root view holding image views with the IDs 1 to {@code count}. */
+    static View createRoot(int count) {
+        Context context = new ContextWrapper(null);
+        Root root = OBJENESIS.newInstance(Root.class);
+        root.init(context, count);
+        for (int i = 0; i < count; i++) {
+            root.children[i] = OBJENESIS.newInstance(Image.class);
+            root.children[i].init(context, root);
+        }
+        return root;
+    }
+
+    static final class Root extends View {
+        Image[] children;
+
+        private Root() {
+            //never called.
+            super(null);
+        }
+
+        void init(Context context, int count) {
+            mContext = context;
+            children = new Image[count];
+        }
+
+        @Override
+        protected View findViewTraversal(int id) {
+            return id > 0 && id <= children.length ? children[id - 1] : null;
+        }
+    }
+
+    static final class Image extends ImageView {
+        Root root;
+
+        private Image() {
+            //never called.
+            super(null);
+        }
+
+        void init(Context context, Root root) {
+            mContext = context;
+            this.root = root;
+        }
+
+        @Override
+        public View getRootView() {
+            return root;
+        }
+    }
+}
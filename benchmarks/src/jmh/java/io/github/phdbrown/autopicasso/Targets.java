@@ -0,0 +1,123 @@
+package io.github.phdbrown.autopicasso;
+
+import android.widget.ImageView;
+
+import io.github.phdbrown.autopicasso.annotations.Picasso;
+
+/**
+ * View holders used as targets. The lookup targets' generated binders are only created, never run.
+ * The load targets' run against {@link StubViews}, so neither needs a real Android runtime.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 2:20 PM Feb 22, 2016
+ */
+final class Targets {
+
+    private static final String URL = "http://square.github.io/picasso/static/sample.png";
+
+    private Targets() {
+        //no instance
+    }
+
+    static class Flat {
+        @Picasso(value = 1, url = URL) ImageView image;
+    }
+
+    static class Base {
+        @Picasso(value = 1, url = URL) ImageView image;
+    }
+
+    static class Level1 extends Base {
+    }
+
+    static class Level2 extends Level1 {
+    }
+
+    static class Level3 extends Level2 {
+    }
+
+    static class Level4 extends Level3 {
+    }
+
+    /** Five classes without generated code above {@link Base} */
+    static class Level5 extends Level4 {
+    }
+
+    /** No generated code anywhere in the hierarchy */
+    static class Unbound {
+    }
+
+    /** Load target with one binding */
+    static class Bindings1 {
+        @Picasso(value = 1, url = URL) ImageView image1;
+    }
+
+    /** Load target with ten bindings */
+    static class Bindings10 {
+        @Picasso(value = 1, url = URL) ImageView image1;
+        @Picasso(value = 2, url = URL) ImageView image2;
+        @Picasso(value = 3, url = URL) ImageView image3;
+        @Picasso(value = 4, url = URL) ImageView image4;
+        @Picasso(value = 5, url = URL) ImageView image5;
+        @Picasso(value = 6, url = URL) ImageView image6;
+        @Picasso(value = 7, url = URL) ImageView image7;
+        @Picasso(value = 8, url = URL) ImageView image8;
+        @Picasso(value = 9, url = URL) ImageView image9;
+        @Picasso(value = 10, url = URL) ImageView image10;
+    }
+
+    /** Load target with fifty bindings */
+    static class Bindings50 {
+        @Picasso(value = 1, url = URL) ImageView image1;
+        @Picasso(value = 2, url = URL) ImageView image2;
+        @Picasso(value = 3, url = URL) ImageView image3;
+        @Picasso(value = 4, url = URL) ImageView image4;
+        @Picasso(value = 5, url = URL) ImageView image5;
+        @Picasso(value = 6, url = URL) ImageView image6;
+        @Picasso(value = 7, url = URL) ImageView image7;
+        @Picasso(value = 8, url = URL) ImageView image8;
+        @Picasso(value = 9, url = URL) ImageView image9;
+        @Picasso(value = 10, url = URL) ImageView image10;
+        @Picasso(value = 11, url = URL) ImageView image11;
+        @Picasso(value = 12, url = URL) ImageView image12;
+        @Picasso(value = 13, url = URL) ImageView image13;
+        @Picasso(value = 14, url = URL) ImageView image14;
+        @Picasso(value = 15, url = URL) ImageView image15;
+        @Picasso(value = 16, url = URL) ImageView image16;
+        @Picasso(value = 17, url = URL) ImageView image17;
+        @Picasso(value = 18, url = URL) ImageView image18;
+        @Picasso(value = 19, url = URL) ImageView image19;
+        @Picasso(value = 20, url = URL) ImageView image20;
+        @Picasso(value = 21, url = URL) ImageView image21;
+        @Picasso(value = 22, url = URL) ImageView image22;
+        @Picasso(value = 23, url = URL) ImageView image23;
+        @Picasso(value = 24, url = URL) ImageView image24;
+        @Picasso(value = 25, url = URL) ImageView image25;
+        @Picasso(value = 26, url = URL) ImageView image26;
+        @Picasso(value = 27, url = URL) ImageView image27;
+        @Picasso(value = 28, url = URL) ImageView image28;
+        @Picasso(value = 29, url = URL) ImageView image29;
+        @Picasso(value = 30, url = URL) ImageView image30;
+        @Picasso(value = 31, url = URL) ImageView image31;
+        @Picasso(value = 32, url = URL) ImageView image32;
+        @Picasso(value = 33, url = URL) ImageView image33;
+        @Picasso(value = 34, url = URL) ImageView image34;
+        @Picasso(value = 35, url = URL) ImageView image35;
+        @Picasso(value = 36, url = URL) ImageView image36;
+        @Picasso(value = 37, url = URL) ImageView image37;
+        @Picasso(value = 38, url = URL) ImageView image38;
+        @Picasso(value = 39, url = URL) ImageView image39;
+        @Picasso(value = 40, url = URL) ImageView image40;
+        @Picasso(value = 41, url = URL) ImageView image41;
+        @Picasso(value = 42, url = URL) ImageView image42;
+        @Picasso(value = 43, url = URL) ImageView image43;
+        @Picasso(value = 44, url = URL) ImageView image44;
+        @Picasso(value = 45, url = URL) ImageView image45;
+        @Picasso(value = 46, url = URL) ImageView image46;
+        @Picasso(value = 47, url = URL) ImageView image47;
+        @Picasso(value = 48, url = URL) ImageView image48;
+        @Picasso(value = 49, url = URL) ImageView image49;
+        @Picasso(value = 50, url = URL) ImageView image50;
+    }
+}
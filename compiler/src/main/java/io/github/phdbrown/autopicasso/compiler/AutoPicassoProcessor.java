@@ -2,16 +2,20 @@ package io.github.phdbrown.autopicasso.compiler;
 
 import com.google.auto.common.SuperficialValidation;
 import com.google.auto.service.AutoService;
+import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.picasso.RequestCreator;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
@@ -20,14 +24,19 @@ import javax.annotation.processing.Filer;
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.Processor;
 import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
 import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.type.TypeVariable;
+import javax.lang.model.util.ElementFilter;
 import javax.lang.model.util.Elements;
 import javax.lang.model.util.Types;
 
@@ -35,9 +44,11 @@ import io.github.phdbrown.autopicasso.annotations.Picasso;
 
 import static javax.lang.model.element.ElementKind.CLASS;
 import static javax.lang.model.element.ElementKind.INTERFACE;
+import static javax.lang.model.element.Modifier.ABSTRACT;
 import static javax.lang.model.element.Modifier.PRIVATE;
 import static javax.lang.model.element.Modifier.STATIC;
 import static javax.tools.Diagnostic.Kind.ERROR;
+import static javax.tools.Diagnostic.Kind.WARNING;
 
 /**
  * Annotation Processor for Picasso annotation
@@ -46,12 +57,28 @@ import static javax.tools.Diagnostic.Kind.ERROR;
 public class AutoPicassoProcessor extends AbstractProcessor {
 
     static final String IMAGE_VIEW_TYPE = "android.widget.ImageView";
+    static final String ACTIVITY_TYPE = "android.app.Activity";
     private static final String NULLABLE_ANNOTATION_NAME = "Nullable";
     private static final String BINDING_CLASS_SUFFIX = "$$AutoPicasso";
+    /** Processor option for the qualified name of the generated loader index, or {@code none}. */
+    static final String OPTION_INDEX = "autoPicassoIndex";
+    /** Processor option for the app's res directory, used to size bindings from their layouts. */
+    static final String OPTION_RES_DIR = "autoPicassoResDir";
+    /** Processor option that, set to {@code true}, reports the size of every generated class. */
+    static final String OPTION_REPORT = "autoPicassoReport";
+    /** Value of {@link #OPTION_INDEX} that turns the index off, making the processor isolating. */
+    static final String INDEX_NONE = "none";
+    /** Options read by Gradle to decide how the processor takes part in incremental builds. */
+    private static final String GRADLE_ISOLATING = "org.gradle.annotation.processing.isolating";
+    private static final String GRADLE_AGGREGATING = "org.gradle.annotation.processing.aggregating";
 
     private Elements elementUtils;
     private Types typeUtils;
     private Filer filer;
+    private boolean indexWritten;
+    private LayoutSizes layoutSizes;
+    private File resDir;
+    private BytecodeReport report;
 
     @Override
     public synchronized void init(ProcessingEnvironment env) {
@@ -60,6 +87,23 @@ public class AutoPicassoProcessor extends AbstractProcessor {
         elementUtils = env.getElementUtils();
         typeUtils = env.getTypeUtils();
         filer = env.getFiler();
+
+        String resDir = env.getOptions().get(OPTION_RES_DIR);
+        if (resDir != null && resDir.length() != 0) {
+            this.resDir = new File(resDir);
+            try {
+                layoutSizes = LayoutSizes.parse(this.resDir);
+            } catch (Exception e) {
+                env.getMessager().printMessage(WARNING, String.format(
+                        "Unable to read layouts from %s."
+                                + " Bindings will not be sized automatically: %s",
+                        resDir, e.getMessage()));
+            }
+        }
+
+        if (Boolean.parseBoolean(env.getOptions().get(OPTION_REPORT))) {
+            report = BytecodeReport.install(env);
+        }
     }
 
     @Override
@@ -69,6 +113,26 @@ public class AutoPicassoProcessor extends AbstractProcessor {
         return types;
     }
 
+    @Override
+    public Set<String> getSupportedOptions() {
+        Set<String> options = new LinkedHashSet<>();
+        options.add(OPTION_INDEX);
+        options.add(OPTION_RES_DIR);
+        options.add(OPTION_REPORT);
+        //each $$AutoPicasso class only depends on its own target. The index depends on all of them.
+        options.add(isIndexEnabled() ? GRADLE_AGGREGATING : GRADLE_ISOLATING);
+        return options;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    private boolean isIndexEnabled() {
+        return !INDEX_NONE.equals(processingEnv.getOptions().get(OPTION_INDEX));
+    }
+
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment env) {
 
@@ -89,17 +153,51 @@ public class AutoPicassoProcessor extends AbstractProcessor {
         for (Map.Entry<TypeElement, PicassoClass> entry : targetClassMap.entrySet()) {
             TypeElement typeElement = entry.getKey();
             PicassoClass picassoClass = entry.getValue();
+            picassoClass.setParentLoader(findParentLoader(typeElement, targetClassMap));
 
             try {
                 picassoClass.brewJava().writeTo(filer);
+                if (report != null) {
+                    report.expect(picassoClass.getClassName().toString());
+                }
             } catch (IOException e) {
                 error(typeElement, "Unable to write Auto Picasso for type %s: %s", typeElement, e.getMessage());
             }
         }
 
+        //The index can only be written once. Targets that only appear in a later round are still
+        //found at runtime through the reflective fallback.
+        if (!indexWritten && !targetClassMap.isEmpty() && isIndexEnabled()) {
+            writeIndex(targetClassMap);
+            indexWritten = true;
+        }
+
         return true;
     }
 
+    /**
+     * Index the annotated targets only. Indexing their subclasses too would make the index depend
+     * on types Gradle does not pass to an aggregating processor in an incremental build, and the
+     * runtime finds a subclass's loader by walking up to its indexed superclass anyway.
+     */
+    private void writeIndex(Map<TypeElement, PicassoClass> targetClassMap) {
+        String indexName = processingEnv.getOptions().get(OPTION_INDEX);
+        if (indexName == null || indexName.length() == 0) {
+            indexName = PicassoIndexClass.DEFAULT_INDEX;
+        }
+        PicassoIndexClass index = new PicassoIndexClass(indexName);
+        for (Map.Entry<TypeElement, PicassoClass> entry : targetClassMap.entrySet()) {
+            String targetName = elementUtils.getBinaryName(entry.getKey()).toString();
+            index.addLoader(entry.getKey(), targetName, entry.getValue().getClassName());
+        }
+        try {
+            index.brewJava().writeTo(filer);
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(ERROR, String.format(
+                    "Unable to write Auto Picasso index %s: %s", indexName, e.getMessage()));
+        }
+    }
+
     private void parsePicasso(Element element, Map<TypeElement, PicassoClass> targetClassMap, Set<String> erasedTargetNames) {
         // Verify common generated code restrictions.
         if (isInaccessibleViaGeneratedCode(Picasso.class, "fields", element)
@@ -130,6 +228,12 @@ public class AutoPicassoProcessor extends AbstractProcessor {
             hasError = true;
         }
 
+        String sourceAccessor = null;
+        if (picasso.source().length() != 0) {
+            sourceAccessor = findSourceAccessor(element, enclosingElement, picasso.source());
+            hasError |= sourceAccessor == null;
+        }
+
         if (hasError) {
             return;
         }
@@ -149,13 +253,295 @@ public class AutoPicassoProcessor extends AbstractProcessor {
         TypeName type = TypeName.get(elementType);
         boolean required = isFieldRequired(element);
 
-        picassoClass.addPicassoElement(id, new PicassoBinding(name, type, required, picasso));
+        PicassoBinding binding = new PicassoBinding(name, type, required, picasso);
+        if (layoutSizes != null && picasso.resize().length != 2 && !picasso.fit()) {
+            addLayoutSize(element, enclosingElement, id, binding);
+        }
+        if (hasInvalidOptions(element, enclosingElement, picasso, binding)) {
+            return;
+        }
+        List<ClassName> transformations = getTransformations(element, enclosingElement);
+        if (transformations == null) {
+            return;
+        }
+        binding.setTransformations(transformations);
+        binding.setSourceAccessor(sourceAccessor);
+        binding.setExplicitConfig(hasExplicitValue(element, "config"));
+        if (picasso.autoConfig()) {
+            binding.setOpaque(isOpaqueSource(enclosingElement, picasso));
+        }
+        picassoClass.addPicassoElement(id, binding);
 
         // Add the type-erased version to the valid binding targets set.
         erasedTargetNames.add(enclosingElement.toString());
 
     }
 
+    /**
+     * Report the option combinations that Picasso would only reject at runtime, on the UI thread.
+     *
+     * @param binding with its layout size already set, since that counts as a resize.
+     */
+    private boolean hasInvalidOptions(Element element, TypeElement enclosingElement,
+                                      Picasso picasso, PicassoBinding binding) {
+        boolean hasError = false;
+        int[] resize = picasso.resize();
+        if (resize.length != 0 && resize.length != 2) {
+            error(element,
+                    "@Picasso resize must have a width and a height. Found %d values. (%s.%s)",
+                    resize.length, enclosingElement.getQualifiedName(), element.getSimpleName());
+            hasError = true;
+        }
+        else if (resize.length == 2
+                && (resize[0] < 0 || resize[1] < 0 || (resize[0] == 0 && resize[1] == 0))) {
+            error(element, "@Picasso resize must not be negative, and at least one side must be"
+                            + " positive. (%s.%s)",
+                    enclosingElement.getQualifiedName(), element.getSimpleName());
+            hasError = true;
+        }
+        if (resize.length == 2 && picasso.fit()) {
+            error(element, "@Picasso fit cannot be used with resize. (%s.%s)",
+                    enclosingElement.getQualifiedName(), element.getSimpleName());
+            hasError = true;
+        }
+        int rotate = picasso.rotate().length;
+        if (rotate != 0 && rotate != 1 && rotate != 3) {
+            error(element, "@Picasso rotate must have a degree, or a degree and a pivot."
+                            + " Found %d values. (%s.%s)",
+                    rotate, enclosingElement.getQualifiedName(), element.getSimpleName());
+            hasError = true;
+        }
+        if (picasso.centerCrop() && picasso.centerInside()) {
+            error(element, "@Picasso centerCrop and centerInside cannot be used together. (%s.%s)",
+                    enclosingElement.getQualifiedName(), element.getSimpleName());
+            hasError = true;
+        }
+        String adaptiveUrl = picasso.adaptiveUrl();
+        if (adaptiveUrl.length() != 0) {
+            if (picasso.url().length() != 0 || picasso.drawable() != 0) {
+                error(element, "@Picasso adaptiveUrl cannot be used with url or drawable. (%s.%s)",
+                        enclosingElement.getQualifiedName(), element.getSimpleName());
+                hasError = true;
+            }
+            if (!adaptiveUrl.contains("{width}") && !adaptiveUrl.contains("{quality}")) {
+                error(element, "@Picasso adaptiveUrl must contain {width} or {quality}. (%s.%s)",
+                        enclosingElement.getQualifiedName(), element.getSimpleName());
+                hasError = true;
+            }
+        }
+        boolean sized = resize.length == 2 || picasso.fit() || binding.getLayoutSize() != null;
+        if (!sized && (picasso.centerCrop() || picasso.centerInside() || picasso.onlyScaleDown())) {
+            String option = picasso.centerCrop() ? "centerCrop"
+                    : picasso.centerInside() ? "centerInside" : "onlyScaleDown";
+            error(element, "@Picasso %s requires resize or fit. (%s.%s)",
+                    option, enclosingElement.getQualifiedName(), element.getSimpleName());
+            hasError = true;
+        }
+        return hasError;
+    }
+
+    /**
+     * Find the field, or method without parameters, named by {@link Picasso#source()} on the target
+     * or its superclasses.
+     *
+     * @return the expression that reads it, without the target, or {@code null} after an error.
+     */
+    private String findSourceAccessor(Element element, TypeElement enclosingElement, String name) {
+        for (Element member : elementUtils.getAllMembers(enclosingElement)) {
+            if (!member.getSimpleName().contentEquals(name)) {
+                continue;
+            }
+            TypeMirror type;
+            String accessor;
+            if (member instanceof VariableElement) {
+                type = member.asType();
+                accessor = name;
+            }
+            else if (member instanceof ExecutableElement
+                    && ((ExecutableElement) member).getParameters().isEmpty()) {
+                type = ((ExecutableElement) member).getReturnType();
+                accessor = name + "()";
+            }
+            else {
+                continue;
+            }
+            if (member.getModifiers().contains(PRIVATE)) {
+                error(element, "@Picasso source '%s' must not be private. (%s.%s)",
+                        name, enclosingElement.getQualifiedName(), element.getSimpleName());
+                return null;
+            }
+            if (!isSupportedSource(type)) {
+                error(element, "@Picasso source '%s' must be a String, Uri, File, int or Object."
+                                + " Found: %s. (%s.%s)",
+                        name, type, enclosingElement.getQualifiedName(), element.getSimpleName());
+                return null;
+            }
+            return accessor;
+        }
+        error(element, "@Picasso source '%s' must be a field, or a method without parameters,"
+                        + " of the target. (%s.%s)",
+                name, enclosingElement.getQualifiedName(), element.getSimpleName());
+        return null;
+    }
+
+    private boolean isSupportedSource(TypeMirror type) {
+        if (type.getKind() == TypeKind.INT) {
+            return true;
+        }
+        String name = typeUtils.erasure(type).toString();
+        return name.equals(String.class.getName())
+                || name.equals("android.net.Uri")
+                || name.equals(File.class.getName())
+                || name.equals(Integer.class.getName())
+                || name.equals(Object.class.getName());
+    }
+
+    private void addLayoutSize(Element element, TypeElement enclosingElement, int id,
+                               PicassoBinding binding) {
+        String idName = findResourceName(enclosingElement, "id", id);
+        LayoutSizes.Size size = idName == null ? null : layoutSizes.get(idName);
+        if (size != null && (size.isFixed() || !size.wrapContent)) {
+            binding.setLayoutSize(size);
+            return;
+        }
+        warning(element, "@Picasso binding decodes images at full size. Add resize or fit, or give"
+                        + " the view a fixed size in its layout. (%s.%s)",
+                enclosingElement.getQualifiedName(), element.getSimpleName());
+    }
+
+    /**
+     * A JPEG url, or a drawable that only exists as JPEG files, can never have an alpha channel.
+     * Drawables can only be checked when the res directory was given to the processor.
+     */
+    private boolean isOpaqueSource(TypeElement enclosingElement, Picasso picasso) {
+        String url = picasso.url();
+        if (url != null && url.length() != 0) {
+            String path = url.toLowerCase(Locale.US);
+            int query = path.indexOf('?');
+            if (query >= 0) {
+                path = path.substring(0, query);
+            }
+            return path.endsWith(".jpg") || path.endsWith(".jpeg");
+        }
+        if (picasso.drawable() == 0 || resDir == null) {
+            return false;
+        }
+        String name = findResourceName(enclosingElement, "drawable", picasso.drawable());
+        File[] folders = resDir.listFiles();
+        if (name == null || folders == null) {
+            return false;
+        }
+        boolean found = false;
+        for (File folder : folders) {
+            if (!folder.getName().startsWith("drawable")) {
+                continue;
+            }
+            File[] files = folder.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                String fileName = file.getName();
+                if (fileName.startsWith(name + ".")) {
+                    String extension = fileName.substring(name.length() + 1).toLowerCase(Locale.US);
+                    if (!extension.equals("jpg") && !extension.equals("jpeg")) {
+                        return false;
+                    }
+                    found = true;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Read {@link Picasso#transformations()} from the annotation mirror, since the classes may not
+     * be loadable by the processor.
+     *
+     * @return the transformation classes, or {@code null} after reporting an error.
+     */
+    private List<ClassName> getTransformations(Element element, TypeElement enclosingElement) {
+        List<ClassName> result = new ArrayList<>();
+        AnnotationValue value = getExplicitValue(element, "transformations");
+        if (value == null) {
+            return result;
+        }
+        boolean hasError = false;
+        for (Object item : (List<?>) value.getValue()) {
+            TypeMirror type = (TypeMirror) ((AnnotationValue) item).getValue();
+            TypeElement typeElement = (TypeElement) typeUtils.asElement(type);
+            Set<Modifier> modifiers = typeElement.getModifiers();
+            boolean inner = typeElement.getNestingKind().isNested() && !modifiers.contains(STATIC);
+            if (typeElement.getKind() != CLASS || modifiers.contains(ABSTRACT) || inner
+                    || !hasPublicNoArgConstructor(typeElement)) {
+                error(element, "@Picasso transformation %s must be a class with a public"
+                                + " no-argument constructor. (%s.%s)",
+                        typeElement.getQualifiedName(), enclosingElement.getQualifiedName(),
+                        element.getSimpleName());
+                hasError = true;
+                continue;
+            }
+            result.add(ClassName.get(typeElement));
+        }
+        return hasError ? null : result;
+    }
+
+    private static boolean hasPublicNoArgConstructor(TypeElement type) {
+        if (!type.getModifiers().contains(Modifier.PUBLIC)) {
+            return false;
+        }
+        for (ExecutableElement constructor
+                : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty()
+                    && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasExplicitValue(Element element, String name) {
+        return getExplicitValue(element, name) != null;
+    }
+
+    private static AnnotationValue getExplicitValue(Element element, String name) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (!Picasso.class.getCanonicalName().equals(mirror.getAnnotationType().toString())) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                    : mirror.getElementValues().entrySet()) {
+                if (entry.getKey().getSimpleName().contentEquals(name)) {
+                    return entry.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the name of a resource by looking for a matching constant in the {@code R} class of the
+     * target's package, or of one of its parent packages. Library R classes are not constants, so
+     * this only works in application modules.
+     */
+    private String findResourceName(TypeElement enclosingElement, String type, int id) {
+        String packageName = getPackageName(enclosingElement);
+        while (packageName.length() != 0) {
+            TypeElement idClass = elementUtils.getTypeElement(packageName + ".R." + type);
+            if (idClass != null) {
+                for (Element field : idClass.getEnclosedElements()) {
+                    if (field instanceof VariableElement && Integer.valueOf(id)
+                            .equals(((VariableElement) field).getConstantValue())) {
+                        return field.getSimpleName().toString();
+                    }
+                }
+            }
+            int dot = packageName.lastIndexOf('.');
+            packageName = dot < 0 ? "" : packageName.substring(0, dot);
+        }
+        return null;
+    }
+
     private PicassoClass getOrCreateTargetClass(Map<TypeElement, PicassoClass> targetClassMap,
                                                 TypeElement enclosingElement) {
         PicassoClass picassoClass = targetClassMap.get(enclosingElement);
@@ -164,12 +550,44 @@ public class AutoPicassoProcessor extends AbstractProcessor {
             String classPackage = getPackageName(enclosingElement);
             String className = getClassName(enclosingElement, classPackage) + BINDING_CLASS_SUFFIX;
 
-            picassoClass = new PicassoClass(classPackage, className);
+            TypeName targetType = TypeName.get(typeUtils.erasure(enclosingElement.asType()));
+            //anything that is not an Activity is treated as a list item view holder
+            boolean holder = !isSubtypeOfType(enclosingElement.asType(), ACTIVITY_TYPE);
+            picassoClass =
+                    new PicassoClass(classPackage, className, targetType, enclosingElement, holder);
             targetClassMap.put(enclosingElement, picassoClass);
         }
         return picassoClass;
     }
 
+    /**
+     * @return the generated loader of the nearest superclass with {@code @Picasso} fields, either
+     * from this round or from an earlier compilation, or {@code null} if there is none.
+     */
+    private ClassName findParentLoader(TypeElement typeElement,
+                                       Map<TypeElement, PicassoClass> targetClassMap) {
+        TypeMirror type = typeElement.getSuperclass();
+        while (type.getKind() == TypeKind.DECLARED) {
+            TypeElement parent = (TypeElement) ((DeclaredType) type).asElement();
+            String qualifiedName = parent.getQualifiedName().toString();
+            if (qualifiedName.startsWith("android.") || qualifiedName.startsWith("java.")) {
+                return null;
+            }
+            PicassoClass parentClass = targetClassMap.get(parent);
+            if (parentClass != null) {
+                return parentClass.getClassName();
+            }
+            String packageName = getPackageName(parent);
+            String loaderName = getClassName(parent, packageName) + BINDING_CLASS_SUFFIX;
+            if (elementUtils.getTypeElement(packageName.isEmpty() ? loaderName
+                    : packageName + "." + loaderName) != null) {
+                return ClassName.get(packageName, loaderName);
+            }
+            type = parent.getSuperclass();
+        }
+        return null;
+    }
+
     //Below methods copied from Jake Wharton's ButterKnife
     //https://github.com/JakeWharton/butterknife
 
@@ -232,6 +650,13 @@ public class AutoPicassoProcessor extends AbstractProcessor {
         processingEnv.getMessager().printMessage(ERROR, message, element);
     }
 
+    private void warning(Element element, String message, Object... args) {
+        if (args.length > 0) {
+            message = String.format(message, args);
+        }
+        processingEnv.getMessager().printMessage(WARNING, message, element);
+    }
+
     private boolean isInterface(TypeMirror typeMirror) {
         return typeMirror instanceof DeclaredType
                 && ((DeclaredType) typeMirror).asElement().getKind() == INTERFACE;
@@ -0,0 +1,207 @@
+package io.github.phdbrown.autopicasso.compiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.TypeElement;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import static javax.tools.Diagnostic.Kind.NOTE;
+import static javax.tools.Diagnostic.Kind.WARNING;
+
+/**
+ * Reports the size of each generated class once javac has written it: the size of the class file,
+ * and the bytecode of each of its methods. Class files only exist after processing is over, so this
+ * listens to javac's own events. They are not part of the annotation processing API, and are only
+ * reached reflectively, so that the processor still runs, without the report, on other compilers.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 4:45 PM Feb 24, 2016
+ */
+final class BytecodeReport implements InvocationHandler {
+
+    private static final int ACC_BRIDGE = 0x0040;
+    /** Constant pool entry sizes, by tag, not counting the tag itself */
+    private static final int[] CONSTANT_SIZES = new int[21];
+
+    static {
+        CONSTANT_SIZES[3] = 4; //Integer
+        CONSTANT_SIZES[4] = 4; //Float
+        CONSTANT_SIZES[5] = 8; //Long
+        CONSTANT_SIZES[6] = 8; //Double
+        CONSTANT_SIZES[7] = 2; //Class
+        CONSTANT_SIZES[8] = 2; //String
+        CONSTANT_SIZES[9] = 4; //Fieldref
+        CONSTANT_SIZES[10] = 4; //Methodref
+        CONSTANT_SIZES[11] = 4; //InterfaceMethodref
+        CONSTANT_SIZES[12] = 4; //NameAndType
+        CONSTANT_SIZES[15] = 3; //MethodHandle
+        CONSTANT_SIZES[16] = 2; //MethodType
+        CONSTANT_SIZES[17] = 4; //Dynamic
+        CONSTANT_SIZES[18] = 4; //InvokeDynamic
+        CONSTANT_SIZES[19] = 2; //Module
+        CONSTANT_SIZES[20] = 2; //Package
+    }
+
+    private final ProcessingEnvironment env;
+    /** Qualified names of the generated classes still to report */
+    private final Set<String> expected = new LinkedHashSet<>();
+
+    private BytecodeReport(ProcessingEnvironment env) {
+        this.env = env;
+    }
+
+    /** @return the report, or {@code null} if the compiler does not support it. */
+    static BytecodeReport install(ProcessingEnvironment env) {
+        BytecodeReport report = new BytecodeReport(env);
+        try {
+            Class<?> taskType = Class.forName("com.sun.source.util.JavacTask");
+            Class<?> listenerType = Class.forName("com.sun.source.util.TaskListener");
+            Object task = taskType.getMethod("instance", ProcessingEnvironment.class)
+                    .invoke(null, env);
+            Object listener = Proxy.newProxyInstance(listenerType.getClassLoader(),
+                    new Class<?>[] {listenerType}, report);
+            taskType.getMethod("addTaskListener", listenerType).invoke(task, listener);
+            return report;
+        } catch (Exception | LinkageError e) {
+            env.getMessager().printMessage(WARNING,
+                    "AutoPicasso cannot report bytecode sizes with this compiler.");
+            return null;
+        }
+    }
+
+    /** Report the class with the given qualified name once it is written. */
+    void expect(String className) {
+        expected.add(className);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "finished":
+                onFinished(args[0]);
+                return null;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "AutoPicasso bytecode report";
+            default:
+                return null;
+        }
+    }
+
+    private void onFinished(Object event) throws Exception {
+        Object kind = event.getClass().getMethod("getKind").invoke(event);
+        if (!"GENERATE".equals(String.valueOf(kind))) {
+            return;
+        }
+        TypeElement type = (TypeElement) event.getClass().getMethod("getTypeElement").invoke(event);
+        if (type == null || !expected.remove(type.getQualifiedName().toString())) {
+            return;
+        }
+        String packageName = env.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String simpleName = type.getSimpleName().toString();
+        String message;
+        try {
+            FileObject file = env.getFiler().getResource(StandardLocation.CLASS_OUTPUT, packageName,
+                    simpleName + ".class");
+            InputStream in = file.openInputStream();
+            try {
+                message = describe(simpleName, in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            message = String.format("%s: class file not readable: %s", simpleName, e.getMessage());
+        }
+        env.getMessager().printMessage(NOTE, message);
+    }
+
+    /** @return the class file's size, then the code size of each method, in declaration order. */
+    static String describe(String name, InputStream stream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int read; (read = stream.read(buffer)) != -1; ) {
+            bytes.write(buffer, 0, read);
+        }
+        //skipping in memory always skips every byte asked for.
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
+        }
+        in.skipBytes(4);
+        int count = in.readUnsignedShort();
+        String[] strings = new String[count];
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            if (tag == 1) {
+                strings[i] = in.readUTF();
+            }
+            else if (tag < CONSTANT_SIZES.length && CONSTANT_SIZES[tag] != 0) {
+                in.skipBytes(CONSTANT_SIZES[tag]);
+                if (tag == 5 || tag == 6) {
+                    //longs and doubles take two slots.
+                    i++;
+                }
+            }
+            else {
+                throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+        in.skipBytes(6);
+        in.skipBytes(2 * in.readUnsignedShort());
+        int fields = in.readUnsignedShort();
+        for (int i = 0; i < fields; i++) {
+            in.skipBytes(6);
+            skipAttributes(in);
+        }
+        StringBuilder methods = new StringBuilder();
+        int total = 0;
+        int methodCount = in.readUnsignedShort();
+        for (int i = 0; i < methodCount; i++) {
+            //bridges to the generic interface methods are only counted in the file size.
+            boolean bridge = (in.readUnsignedShort() & ACC_BRIDGE) != 0;
+            String method = strings[in.readUnsignedShort()];
+            in.skipBytes(2);
+            int attributes = in.readUnsignedShort();
+            for (int j = 0; j < attributes; j++) {
+                String attribute = strings[in.readUnsignedShort()];
+                int length = in.readInt();
+                if ("Code".equals(attribute) && !bridge) {
+                    in.skipBytes(4);
+                    int code = in.readInt();
+                    total += code;
+                    methods.append(methods.length() == 0 ? "" : ", ")
+                            .append(method).append(' ').append(code);
+                    in.skipBytes(length - 8);
+                }
+                else {
+                    in.skipBytes(length);
+                }
+            }
+        }
+        return String.format("%s: %d bytes, %d bytes of bytecode (%s)", name, bytes.size(), total,
+                methods);
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        int attributes = in.readUnsignedShort();
+        for (int i = 0; i < attributes; i++) {
+            in.skipBytes(2);
+            in.skipBytes(in.readInt());
+        }
+    }
+}
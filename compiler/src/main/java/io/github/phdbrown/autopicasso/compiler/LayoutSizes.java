@@ -0,0 +1,142 @@
+package io.github.phdbrown.autopicasso.compiler;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * Reads the declared size of every view with an ID from the layout XML files of a res directory.
+ * Used to pick a {@code resize} or {@code fit} for bindings that do not declare one.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 3:05 PM Feb 15, 2016
+ */
+final class LayoutSizes {
+
+    private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+    private static final Pattern ID = Pattern.compile("@\\+?id/(\\w+)");
+    private static final Pattern DIMENSION = Pattern.compile("(\\d+(?:\\.\\d+)?)(dp|dip|px)");
+
+    /** Size of a view, as declared in its layout. */
+    static final class Size {
+        /**
+         * Fixed sizes are in dp, or px if {@link #px} is set, and never zero. {@code null} if not
+         * fixed.
+         */
+        final Float width;
+        final Float height;
+        final boolean px;
+        /** Whether either side wraps its content, in which case {@code fit()} cannot be used. */
+        final boolean wrapContent;
+
+        Size(Float width, Float height, boolean px, boolean wrapContent) {
+            this.width = width;
+            this.height = height;
+            this.px = px;
+            this.wrapContent = wrapContent;
+        }
+
+        boolean isFixed() {
+            return width != null && height != null;
+        }
+    }
+
+    private final Map<String, Size> sizes = new HashMap<>();
+    /** IDs declared with different sizes in different layouts */
+    private final Set<String> ambiguous = new HashSet<>();
+
+    /**
+     * Parse all {@code layout} folders of the given res directory. Qualified folders are included,
+     * so that an ID with different sizes per configuration is never given a fixed size.
+     */
+    static LayoutSizes parse(File resDir) throws Exception {
+        LayoutSizes result = new LayoutSizes();
+        File[] folders = resDir.listFiles();
+        if (folders == null) {
+            throw new IllegalArgumentException("Not a res directory: " + resDir);
+        }
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        for (File folder : folders) {
+            if (!folder.isDirectory() || !folder.getName().startsWith("layout")) {
+                continue;
+            }
+            File[] files = folder.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (file.getName().endsWith(".xml")) {
+                    result.read(builder.parse(file));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** @return the declared size of the view, or {@code null} if it is unknown or ambiguous. */
+    Size get(String idName) {
+        if (ambiguous.contains(idName)) {
+            return null;
+        }
+        return sizes.get(idName);
+    }
+
+    private void read(Document document) {
+        NodeList nodes = document.getElementsByTagName("*");
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Element element = (Element) nodes.item(i);
+            Matcher id = ID.matcher(element.getAttributeNS(ANDROID_NS, "id"));
+            if (!id.matches()) {
+                continue;
+            }
+            String name = id.group(1);
+            String width = element.getAttributeNS(ANDROID_NS, "layout_width");
+            String height = element.getAttributeNS(ANDROID_NS, "layout_height");
+            Size size = toSize(width, height);
+            Size previous = sizes.put(name, size);
+            if (previous != null && !sameSize(previous, size)) {
+                ambiguous.add(name);
+            }
+        }
+    }
+
+    private static Size toSize(String width, String height) {
+        boolean wrapContent = "wrap_content".equals(width) || "wrap_content".equals(height);
+        Matcher w = DIMENSION.matcher(width);
+        Matcher h = DIMENSION.matcher(height);
+        if (w.matches() && h.matches()) {
+            boolean wPx = "px".equals(w.group(2));
+            boolean hPx = "px".equals(h.group(2));
+            Float fixedWidth = Float.valueOf(w.group(1));
+            Float fixedHeight = Float.valueOf(h.group(1));
+            //a zero side is stretched by a weight or constraint at layout, so only fit() knows it.
+            if (wPx == hPx && fixedWidth > 0 && fixedHeight > 0) {
+                return new Size(fixedWidth, fixedHeight, wPx, false);
+            }
+        }
+        return new Size(null, null, false, wrapContent);
+    }
+
+    private static boolean sameSize(Size a, Size b) {
+        return equal(a.width, b.width) && equal(a.height, b.height)
+                && a.px == b.px && a.wrapContent == b.wrapContent;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -1,7 +1,11 @@
 package io.github.phdbrown.autopicasso.compiler;
 
+import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.TypeName;
 
+import java.util.Collections;
+import java.util.List;
+
 import io.github.phdbrown.autopicasso.annotations.Picasso;
 
 /**
@@ -17,6 +21,16 @@ final class PicassoBinding {
     private final String name;
     private final TypeName type;
     private final boolean required;
+    /** Size of the view in its layout, if the res directory was given to the processor */
+    private LayoutSizes.Size layoutSize;
+    /** Whether {@link Picasso#config()} was set explicitly rather than left at its default */
+    private boolean explicitConfig;
+    /** Whether the processor could tell that the source has no alpha channel */
+    private boolean opaque;
+    /** Field or method call on the target that supplies the source at runtime, or {@code null} */
+    private String sourceAccessor;
+    /** Classes of {@link Picasso#transformations()} */
+    private List<ClassName> transformations = Collections.emptyList();
 
     PicassoBinding(String name, TypeName type, boolean required, Picasso picasso) {
         this.name = name;
@@ -40,4 +54,44 @@ final class PicassoBinding {
     public Picasso getPicasso() {
         return mPicasso;
     }
+
+    public LayoutSizes.Size getLayoutSize() {
+        return layoutSize;
+    }
+
+    public void setLayoutSize(LayoutSizes.Size layoutSize) {
+        this.layoutSize = layoutSize;
+    }
+
+    public boolean hasExplicitConfig() {
+        return explicitConfig;
+    }
+
+    public void setExplicitConfig(boolean explicitConfig) {
+        this.explicitConfig = explicitConfig;
+    }
+
+    public boolean isOpaque() {
+        return opaque;
+    }
+
+    public void setOpaque(boolean opaque) {
+        this.opaque = opaque;
+    }
+
+    public String getSourceAccessor() {
+        return sourceAccessor;
+    }
+
+    public void setSourceAccessor(String sourceAccessor) {
+        this.sourceAccessor = sourceAccessor;
+    }
+
+    public List<ClassName> getTransformations() {
+        return transformations;
+    }
+
+    public void setTransformations(List<ClassName> transformations) {
+        this.transformations = transformations;
+    }
 }
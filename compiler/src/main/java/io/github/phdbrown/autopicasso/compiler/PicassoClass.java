@@ -1,25 +1,31 @@
 package io.github.phdbrown.autopicasso.compiler;
 
-import android.app.Activity;
-import android.graphics.Bitmap;
-
-import com.squareup.javapoet.AnnotationSpec;
 import com.squareup.javapoet.ClassName;
-import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
 import com.squareup.picasso.MemoryPolicy;
-import com.squareup.picasso.NetworkPolicy;
 import com.squareup.picasso.Transformation;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
+import javax.lang.model.element.TypeElement;
+
 import io.github.phdbrown.autopicasso.annotations.Picasso;
 
 import static javax.lang.model.element.Modifier.FINAL;
+import static javax.lang.model.element.Modifier.PRIVATE;
 import static javax.lang.model.element.Modifier.PUBLIC;
+import static javax.lang.model.element.Modifier.STATIC;
 
 /**
  * Auto-Generation Class
@@ -32,33 +38,102 @@ final class PicassoClass {
 
     private static final ClassName LOADER = ClassName.get("io.github.phdbrown.autopicasso.internal", "PicassoLoader");
     private static final ClassName IMAGE_VIEW = ClassName.get("android.widget", "ImageView");
+    private static final ClassName VIEW = ClassName.get("android.view", "View");
     private static final ClassName PICASSO = ClassName.get("com.squareup.picasso", "Picasso");
-    private static final ClassName BUILDER = ClassName.get(com.squareup.picasso.Picasso.Builder.class);
-    private static final ClassName LISTENER = ClassName.get(com.squareup.picasso.Picasso.Listener.class);
+    private static final ClassName BINDER =
+            ClassName.get("io.github.phdbrown.autopicasso.internal", "PicassoBinder");
+    private static final ClassName CONTEXT = ClassName.get("android.content", "Context");
+    private static final ClassName TRANSFORMATIONS =
+            ClassName.get("io.github.phdbrown.autopicasso.internal", "PicassoTransformations");
+    private static final ClassName BATCH =
+            ClassName.get("io.github.phdbrown.autopicasso.internal", "PicassoBatch");
+    private static final ClassName REGISTRY =
+            ClassName.get("io.github.phdbrown.autopicasso.internal", "PicassoRegistry");
+    private static final ClassName SPEC =
+            ClassName.get("io.github.phdbrown.autopicasso.internal", "PicassoSpec");
     private static final ClassName TRANSFORMATION = ClassName.get("com.squareup.picasso", "Transformation");
-    private static final ClassName REQUEST_CREATOR = ClassName.get("com.squareup.picasso", "RequestCreator");
-
-    private static final String BITMAP_CONFIG = Bitmap.Config.class.getCanonicalName();
-    private static final String MEMORY_POLICY = MemoryPolicy.class.getCanonicalName();
-    private static final String PRIORITY = com.squareup.picasso.Picasso.Priority.class.getCanonicalName();
-    private static final String NETWORK_POLICY = NetworkPolicy.class.getCanonicalName();
+    private static final ClassName BITMAP_CONFIG =
+            ClassName.get("android.graphics", "Bitmap", "Config");
+    private static final ClassName MEMORY_POLICY =
+            ClassName.get("com.squareup.picasso", "MemoryPolicy");
+    private static final ClassName NETWORK_POLICY =
+            ClassName.get("com.squareup.picasso", "NetworkPolicy");
+    private static final ClassName PRIORITY =
+            ClassName.get("com.squareup.picasso", "Picasso", "Priority");
 
     private final Map<Integer, PicassoBinding> viewIdMap = new LinkedHashMap<>();
+    /** Field of the shared instance of each annotation transformation */
+    private final Map<ClassName, String> transformations = new LinkedHashMap<>();
 
     private final String classPackage;
     private final String className;
+    private final TypeName targetType;
+    /** The annotated class. The generated file depends on nothing else, for incremental builds */
+    private final TypeElement originatingElement;
+    /** Whether the target is not an Activity, and so can also be bound as a view holder */
+    private final boolean holder;
+    /** Generated loader of the nearest annotated superclass, or {@code null} */
+    private ClassName parentLoader;
 
-    PicassoClass(String classPackage, String className) {
+    PicassoClass(String classPackage, String className, TypeName targetType,
+                 TypeElement originatingElement, boolean holder) {
         this.classPackage = classPackage;
         this.className = className;
+        this.targetType = targetType;
+        this.originatingElement = originatingElement;
+        this.holder = holder;
     }
 
+    /**
+     * Every option of a binding is known to the processor, so it is written once into a static
+     * {@code PicassoSpec}, and the generated methods only pass each view to its spec. The request
+     * building code lives in the runtime, rather than in every generated class.
+     */
     JavaFile brewJava() {
         TypeSpec.Builder result = TypeSpec.classBuilder(className)
                 .addModifiers(PUBLIC)
-                .addSuperinterface(LOADER);
+                .addOriginatingElement(originatingElement);
+
+        if (parentLoader != null) {
+            result.addField(FieldSpec.builder(parentLoader, "parent", PRIVATE, FINAL)
+                    .initializer("new $T()", parentLoader)
+                    .build());
+        }
 
+        if (holder) {
+            //sources are matched to superclass fields first, so subclasses need to know how many.
+            if (parentLoader != null) {
+                result.addField(FieldSpec.builder(int.class, "OFFSET", PRIVATE, STATIC, FINAL)
+                        .initializer("$T.SOURCE_COUNT", parentLoader)
+                        .build());
+            }
+            result.addField(FieldSpec.builder(int.class, "SOURCE_COUNT", PUBLIC, STATIC, FINAL)
+                    .initializer(parentLoader != null ? "OFFSET + $L" : "$L", viewIdMap.size())
+                    .build());
+            result.addSuperinterface(ParameterizedTypeName.get(BINDER, targetType));
+            result.addMethod(createBindMethod());
+        }
+        result.addSuperinterface(ParameterizedTypeName.get(LOADER, targetType));
         result.addMethod(createLoadMethod());
+        result.addMethod(createResolveMethod());
+        result.addMethod(createBatchLoadMethod());
+        result.addMethod(createPrefetchMethod());
+        result.addMethod(createPreloadDrawablesMethod());
+        //the specs are built from the shared transformations, so those are initialized first.
+        List<FieldSpec> specFields = new ArrayList<>();
+        for (Map.Entry<Integer, PicassoBinding> entry : viewIdMap.entrySet()) {
+            String name = getSpec(entry.getValue());
+            specFields.add(FieldSpec.builder(SPEC, name, PRIVATE, STATIC, FINAL)
+                    .initializer(getSpecInitializer(entry.getKey(), entry.getValue()))
+                    .build());
+        }
+        for (Map.Entry<ClassName, String> entry : transformations.entrySet()) {
+            String name = entry.getValue();
+            result.addField(FieldSpec.builder(TRANSFORMATION, name, PRIVATE, STATIC, FINAL)
+                    .initializer("$T.share(new $T())", TRANSFORMATIONS, entry.getKey())
+                    .build());
+        }
+        result.addFields(specFields);
 
         return JavaFile.builder(classPackage, result.build())
                 .addFileComment("Generated code from AutoPicasso. Do not modify!")
@@ -69,170 +144,433 @@ final class PicassoClass {
         MethodSpec.Builder result = MethodSpec.methodBuilder("load")
                 .addAnnotation(Override.class)
                 .addModifiers(PUBLIC)
-                .addParameter(Activity.class, "activity", FINAL)
+                .addParameter(targetType, "target", FINAL)
+                .addParameter(VIEW, "source", FINAL)
                 .addParameter(Transformation[].class, "transformations", FINAL);
 
-        result.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class)
-                .addMember("value", "$S", "ResourceType")
-                .build());
+        result.addStatement("resolve(target, source)");
+        result.addStatement("$T batch = new $T()", BATCH, BATCH);
+        result.addStatement("load(target, source, transformations, batch)");
+        result.addStatement("batch.submit()");
 
-        if (!viewIdMap.isEmpty()) {
-            // Local variables
-            result.addStatement("$T view", IMAGE_VIEW);
-            result.addStatement("$T picasso", PICASSO);
+        return result.build();
+    }
+
+    /**
+     * Finds the views of the whole class hierarchy. This is the only part of a load that touches
+     * the view hierarchy, so it runs on the main thread even when the requests are built elsewhere.
+     */
+    private MethodSpec createResolveMethod() {
+        MethodSpec.Builder result = MethodSpec.methodBuilder("resolve")
+                .addAnnotation(Override.class)
+                .addModifiers(PUBLIC)
+                .addParameter(targetType, "target", FINAL)
+                .addParameter(VIEW, "source", FINAL);
+
+        if (parentLoader != null) {
+            result.addStatement("parent.resolve(target, source)");
+        }
 
+        if (!viewIdMap.isEmpty()) {
+            result.addStatement("$T root = source.getRootView()", VIEW);
             for (Map.Entry<Integer, PicassoBinding> entry : viewIdMap.entrySet()) {
-                addPicassoBinding(result, entry.getKey(), entry.getValue());
+                addViewLookup(result, entry.getKey(), entry.getValue());
             }
         }
 
         return result.build();
     }
 
-    public void addPicassoElement(int resId, PicassoBinding binding) {
-        viewIdMap.put(resId, binding);
-    }
+    /**
+     * Adds the requests of the whole class hierarchy to one batch, once {@code resolve} found the
+     * views. Safe to call from any thread, since the batch only starts them when it is submitted.
+     */
+    private MethodSpec createBatchLoadMethod() {
+        MethodSpec.Builder result = MethodSpec.methodBuilder("load")
+                .addAnnotation(Override.class)
+                .addModifiers(PUBLIC)
+                .addParameter(targetType, "target", FINAL)
+                .addParameter(VIEW, "source", FINAL)
+                .addParameter(Transformation[].class, "transformations", FINAL)
+                .addParameter(BATCH, "batch", FINAL);
 
-    private void addPicassoBinding(MethodSpec.Builder result, int id, PicassoBinding binding) {
-        result.addStatement("view = ($T) activity.findViewById($L)", IMAGE_VIEW, id);
-        //bind to the Activity's view
-        //result.addStatement("activity.$L = view;//$T.class.cast(view)", binding.getName(), binding.getType().toString());//TODO does this work?
-        //Now add the Picasso Code
-        result.addCode(CodeBlock.builder().beginControlFlow("if (activity instanceof $T)", LISTENER)
-                .addStatement("picasso = new $T(activity).listener(($T) activity).build()", BUILDER, LISTENER)
-                .nextControlFlow("else")
-                .addStatement("picasso = $T.with(activity)", PICASSO)
-                .endControlFlow().build());
+        if (parentLoader != null) {
+            result.addStatement("parent.load(target, source, transformations, batch)");
+        }
 
-        String configuration = getConfigurationStatement(binding.getPicasso());
-        if (configuration.length() > 0) {
-            result.addStatement(configuration);
+        if (!viewIdMap.isEmpty()) {
+            if (holder) {
+                result.addStatement("$T picasso = $T.obtain(source.getContext())", PICASSO,
+                        REGISTRY);
+            }
+            else {
+                result.addStatement("$T picasso = $T.obtain(target)", PICASSO, REGISTRY);
+            }
+            for (PicassoBinding binding : viewIdMap.values()) {
+                //resolve() already failed for a missing required view.
+                String accessor = binding.getSourceAccessor();
+                if (accessor == null) {
+                    result.addStatement("$L.load(batch, picasso, $L, transformations)",
+                            getSpec(binding), getView(binding, "target"));
+                }
+                else {
+                    result.addStatement("$L.load(batch, picasso, $L, target.$L, transformations)",
+                            getSpec(binding), getView(binding, "target"), accessor);
+                }
+            }
         }
-        addLoader(result, binding.getPicasso());
-        result.addStatement("for ($T t : transformations) { creator.transform(t); }", TRANSFORMATION);
-        result.addStatement("creator.into(view)");
+
+        return result.build();
     }
 
-    private String getConfigurationStatement(Picasso picasso) {
-        StringBuilder builder = new StringBuilder();
-        boolean hasEntry = false;
-        if (picasso.log()) {
-            appendMethod(builder, "setLoggingEnabled", true);
-            hasEntry = true;
+    private MethodSpec createPrefetchMethod() {
+        MethodSpec.Builder result = MethodSpec.methodBuilder("prefetch")
+                .addAnnotation(Override.class)
+                .addModifiers(PUBLIC)
+                .addParameter(CONTEXT, "context", FINAL);
+
+        if (parentLoader != null) {
+            result.addStatement("parent.prefetch(context)");
         }
-        if (picasso.indicators()) {
-            appendMethod(builder, "setIndicatorsEnabled", true);
-            hasEntry = true;
+
+        boolean first = true;
+        for (PicassoBinding binding : viewIdMap.values()) {
+            //the url or drawable of a binding with a runtime source is only its fallback, and a
+            //fetch cannot fit(), so it would never produce the bitmap the view asks for.
+            if (!hasStaticSource(binding.getPicasso()) || binding.getSourceAccessor() != null
+                    || isFit(binding)) {
+                continue;
+            }
+            if (first) {
+                result.addStatement("$T picasso = $T.obtain(context)", PICASSO, REGISTRY);
+                first = false;
+            }
+            result.addStatement("$L.prefetch(picasso, context)", getSpec(binding));
         }
-        if (hasEntry) {
-            builder.insert(0, "picasso");
+
+        return result.build();
+    }
+
+    private MethodSpec createPreloadDrawablesMethod() {
+        MethodSpec.Builder result = MethodSpec.methodBuilder("preloadDrawables")
+                .addAnnotation(Override.class)
+                .addModifiers(PUBLIC)
+                .addParameter(CONTEXT, "context", FINAL);
+
+        if (parentLoader != null) {
+            result.addStatement("parent.preloadDrawables(context)");
         }
-        return builder.toString();
+
+        for (PicassoBinding binding : viewIdMap.values()) {
+            Picasso picasso = binding.getPicasso();
+            if (picasso.placeholder() != 0 || picasso.error() != 0) {
+                result.addStatement("$L.preloadDrawables(context)", getSpec(binding));
+            }
+        }
+
+        return result.build();
     }
 
-    private String getLoadString(Picasso picasso) {
-        StringBuilder builder = new StringBuilder("picasso");
-        String url = picasso.url();
-        int drawable = picasso.drawable();
-        if (url != null && url.length() != 0) {
-            appendMethod(builder, "load", "\"" + url + "\"");
+    private MethodSpec createBindMethod() {
+        MethodSpec.Builder result = MethodSpec.methodBuilder("bind")
+                .addAnnotation(Override.class)
+                .addModifiers(PUBLIC)
+                .addParameter(targetType, "holder", FINAL)
+                .addParameter(Object[].class, "sources", FINAL);
+
+        if (parentLoader != null) {
+            result.addStatement("parent.bind(holder, sources)");
+        }
+
+        int index = 0;
+        for (PicassoBinding binding : viewIdMap.values()) {
+            //holder fields are assigned by the adapter, so the view is used as-is.
+            String position = parentLoader != null ? "OFFSET + " + index : String.valueOf(index);
+            String accessor = binding.getSourceAccessor();
+            if (accessor == null) {
+                result.addStatement("$L.bind($L, sources.length > $L ? sources[$L] : null)",
+                        getSpec(binding), getView(binding, "holder"), position, position);
+            }
+            else {
+                result.addStatement("$L.bind($L, sources.length > $L && sources[$L] != null"
+                                + " ? sources[$L] : holder.$L)", getSpec(binding),
+                        getView(binding, "holder"), position, position, position, accessor);
+            }
+            index++;
         }
-        else if (drawable != 0) {
-            appendMethod(builder, "load", drawable);
+
+        return result.build();
+    }
+
+    ClassName getClassName() {
+        return ClassName.get(classPackage, className);
+    }
+
+    /** Delegate to the loader of an annotated superclass before binding this class's own fields. */
+    void setParentLoader(ClassName parentLoader) {
+        this.parentLoader = parentLoader;
+    }
+
+    public void addPicassoElement(int resId, PicassoBinding binding) {
+        viewIdMap.put(resId, binding);
+    }
+
+    private void addViewLookup(MethodSpec.Builder result, int id, PicassoBinding binding) {
+        String name = binding.getName();
+        //bind to the view under the source. The cached reference is only looked up again if it is
+        //missing or no longer shares a root with the source, e.g. after a new setContentView or
+        //after a Fragment created a new view.
+        result.beginControlFlow("if (target.$L == null || target.$L.getRootView() != root)", name,
+                name)
+                .addStatement("target.$L = ($T) source.findViewById($L)", name, binding.getType(),
+                        id)
+                .endControlFlow();
+        if (binding.isRequired()) {
+            result.beginControlFlow("if (target.$L == null)", name);
+            addRequiredViewError(result, id, binding);
+            result.endControlFlow();
         }
-        return builder.toString();
     }
 
-    private void addLoader(MethodSpec.Builder result, Picasso picasso) {
-        result.addStatement("$T creator = $L", REQUEST_CREATOR, getLoadString(picasso));
+    /** @return the name of the binding's spec field. */
+    private String getSpec(PicassoBinding binding) {
+        return "SPEC_" + toConstantName(binding.getName());
+    }
+
+    private CodeBlock getView(PicassoBinding binding, String owner) {
+        if (IMAGE_VIEW.equals(binding.getType())) {
+            return CodeBlock.builder().add("$L.$L", owner, binding.getName()).build();
+        }
+        return CodeBlock.builder().add("($T) $L.$L", IMAGE_VIEW, owner, binding.getName()).build();
+    }
 
-        int placeholder = picasso.placeholder();
-        if (placeholder != 0) {
-            result.addStatement("creator.placeholder($L)", placeholder);
+    /** @return the spec of the binding, with every option the annotation sets, one per line. */
+    private CodeBlock getSpecInitializer(int id, PicassoBinding binding) {
+        Picasso picasso = binding.getPicasso();
+        CodeBlock.Builder result = CodeBlock.builder()
+                .add("new $T($T.class, $S, $L)$>$>", SPEC, targetType, binding.getName(), id);
+        if (!binding.isRequired()) {
+            result.add("\n.optional()");
+        }
+        String url = picasso.url();
+        if (url != null && url.length() != 0) {
+            result.add("\n.url($S)", url);
+        }
+        else if (picasso.drawable() != 0) {
+            result.add("\n.drawable($L)", picasso.drawable());
+        }
+        else if (picasso.adaptiveUrl().length() != 0) {
+            result.add("\n.adaptiveUrl($S)", picasso.adaptiveUrl());
+        }
+        if (picasso.placeholder() != 0) {
+            result.add("\n.placeholder($L)", picasso.placeholder());
         }
-        int error = picasso.error();
-        if (error != 0) {
-            result.addStatement("creator.error($L)", error);
+        if (picasso.error() != 0) {
+            result.add("\n.error($L)", picasso.error());
         }
         String tag = picasso.tag();
         if (tag != null && tag.length() != 0) {
-            result.addStatement("creator.tag($L)", tag);
+            result.add("\n.tag($S)", tag);
         }
-        boolean fit = picasso.fit();
-        if (fit) {
-            result.addStatement("creator.fit()");
+        if (picasso.fit()) {
+            result.add("\n.fit()");
         }
         int[] resize = picasso.resize();
         if (resize.length == 2) {
-            result.addStatement("creator.resize($L,$L)", resize[0], resize[1]);
+            result.add("\n.resize($L, $L)", resize[0], resize[1]);
         }
-        boolean centerCrop = picasso.centerCrop();
-        if (centerCrop) {
-            result.addStatement("creator.centerCrop()");
+        boolean layoutScaled = addLayoutSize(result, binding);
+        if (picasso.centerCrop()) {
+            result.add("\n.centerCrop()");
         }
-        boolean centerInside = picasso.centerInside();
-        if (centerInside) {
-            result.addStatement("creator.centerInside()");
+        if (picasso.centerInside() || (layoutScaled && !picasso.centerCrop())) {
+            result.add("\n.centerInside()");
         }
-        boolean onlyScaleDown = picasso.onlyScaleDown();
-        if (onlyScaleDown) {
-            result.addStatement("creator.onlyScaleDown()");
+        if (picasso.onlyScaleDown() || layoutScaled) {
+            result.add("\n.onlyScaleDown()");
         }
         float[] rotate = picasso.rotate();
         if (rotate.length == 1) {
-            result.addStatement("creator.rotate($L)", rotate[0]);
+            result.add("\n.rotate($Lf)", rotate[0]);
         }
         else if (rotate.length == 3) {
-            result.addStatement("creator.rotate($L,$L,$L)", rotate[0], rotate[1], rotate[2]);
+            result.add("\n.rotate($Lf, $Lf, $Lf)", rotate[0], rotate[1], rotate[2]);
+        }
+        //ARGB_8888 is also Picasso's default, so nothing is set unless asked for.
+        if (binding.hasExplicitConfig()) {
+            result.add("\n.config($T.$L)", BITMAP_CONFIG, picasso.config());
+        }
+        else if (picasso.autoConfig()) {
+            result.add("\n.autoConfig($L)", binding.isOpaque());
         }
-        result.addStatement("creator.config($L.$L)", BITMAP_CONFIG, picasso.config());
         String stableKey = picasso.stableKey();
         if (stableKey != null && stableKey.length() != 0) {
-            result.addStatement("creator.stableKey($L)", stableKey);
+            result.add("\n.stableKey($S)", stableKey);
         }
-        result.addStatement("creator.priority($L.$L)", PRIORITY, picasso.priority());
-
-        MemoryPolicy[] memoryPolicy = picasso.memoryPolicy();
-        if (memoryPolicy.length > 0) {
-            result.addStatement("creator.memoryPolicy($L)", arrayToString(MEMORY_POLICY + ".", memoryPolicy));
+        if (picasso.priority() != com.squareup.picasso.Picasso.Priority.NORMAL) {
+            result.add("\n.priority($T.$L)", PRIORITY, picasso.priority());
+        }
+        if (picasso.memoryPolicy().length > 0) {
+            result.add("\n.memoryPolicy($L)", getConstants(MEMORY_POLICY, picasso.memoryPolicy()));
         }
-        NetworkPolicy[] networkPolicy = picasso.networkPolicy();
-        if (networkPolicy.length > 0) {
-            result.addStatement("creator.networkPolicy($L)", arrayToString(NETWORK_POLICY + ".", networkPolicy));
+        if (picasso.networkPolicy().length > 0) {
+            result.add("\n.networkPolicy($L)",
+                    getConstants(NETWORK_POLICY, picasso.networkPolicy()));
         }
-        boolean noFade = picasso.noFade();
-        if (noFade) {
-            result.addStatement("creator.noFade()");
+        if (picasso.noFade()) {
+            result.add("\n.noFade()");
+        }
+        if (picasso.log()) {
+            result.add("\n.log()");
+        }
+        if (picasso.indicators()) {
+            result.add("\n.indicators()");
         }
+        List<ClassName> classes = binding.getTransformations();
+        if (!classes.isEmpty()) {
+            List<String> fields = new ArrayList<>();
+            for (ClassName transformation : classes) {
+                fields.add(getTransformationField(transformation));
+            }
+            result.add("\n.transform($L)", join(fields));
+        }
+        String options = getBatchOptions(binding);
+        if (options != null) {
+            result.add("\n.coalesce($S)", options);
+        }
+        return result.add("$<$<").build();
     }
 
-    private void appendMethod(StringBuilder builder, String name, Object... args) {
-        builder.append(".").append(name).append("(");
-        if (args.length > 0) {
-            int i;
-            for (i = 0; i < args.length - 1; i++) {
-                builder.append(args[i]);
-                builder.append(",");
+    /**
+     * Downsample bindings that declare neither {@code resize} nor {@code fit} to the size of their
+     * view in the layout: a fixed size becomes a {@code resize}, anything else that is not
+     * {@code wrap_content} becomes {@code fit()}. The image is never scaled up or distorted.
+     *
+     * @return whether the layout size was applied.
+     */
+    private boolean addLayoutSize(CodeBlock.Builder result, PicassoBinding binding) {
+        Picasso picasso = binding.getPicasso();
+        LayoutSizes.Size size = binding.getLayoutSize();
+        if (size == null || picasso.resize().length == 2 || picasso.fit()) {
+            return false;
+        }
+        if (size.isFixed()) {
+            if (size.px) {
+                result.add("\n.resize($L, $L)", Math.round(size.width), Math.round(size.height));
             }
-            builder.append(args[i]);
+            else {
+                result.add("\n.resizeDp($Lf, $Lf)", size.width, size.height);
+            }
+            return true;
+        }
+        if (!size.wrapContent) {
+            result.add("\n.fit()");
+            return true;
         }
+        return false;
+    }
 
-        builder.append(")");
+    private CodeBlock getConstants(ClassName type, Enum<?>[] values) {
+        CodeBlock.Builder result = CodeBlock.builder();
+        for (int i = 0; i < values.length; i++) {
+            result.add(i == 0 ? "$T.$L" : ", $T.$L", type, values[i].name());
+        }
+        return result.build();
     }
 
-    private String arrayToString(String prefix, Object[] array) {
+    private static String join(List<String> values) {
         StringBuilder builder = new StringBuilder();
-        if (array.length > 0) {
-            int i;
-            for (i = 0; i < array.length - 1; i++) {
-                builder.append(prefix).append(array[i]);
-                builder.append(",");
+        for (String value : values) {
+            if (builder.length() > 0) {
+                builder.append(", ");
             }
-            builder.append(prefix).append(array[i]);
+            builder.append(value);
         }
         return builder.toString();
     }
 
+    private void addRequiredViewError(MethodSpec.Builder result, int id, PicassoBinding binding) {
+        result.addStatement("throw new $T($S)", IllegalStateException.class,
+                "Required view with ID " + id + " for field '" + binding.getName()
+                        + "' was not found. If this view is optional add '@Nullable' annotation.");
+    }
+
+    /**
+     * @return every option that changes the decoded image, which together with the source and the
+     * transformations decides whether two requests can share one fetch, or {@code null} if the
+     * binding's requests must never be shared: {@code fit()} depends on each view's measured size,
+     * and a request that skips the memory cache could not hand its bitmap to the others.
+     */
+    private String getBatchOptions(PicassoBinding binding) {
+        Picasso picasso = binding.getPicasso();
+        if (isFit(binding)) {
+            return null;
+        }
+        LayoutSizes.Size size = binding.getLayoutSize();
+        boolean layoutSize = size != null && picasso.resize().length != 2 && size.isFixed();
+        for (MemoryPolicy policy : picasso.memoryPolicy()) {
+            if (policy == MemoryPolicy.NO_CACHE || policy == MemoryPolicy.NO_STORE) {
+                return null;
+            }
+        }
+        StringBuilder builder = new StringBuilder("resize=");
+        if (picasso.resize().length == 2) {
+            builder.append(picasso.resize()[0]).append(',').append(picasso.resize()[1]);
+        }
+        else if (layoutSize) {
+            builder.append(size.width).append(',').append(size.height)
+                    .append(size.px ? "px" : "dp").append(";layout");
+        }
+        builder.append(";centerCrop=").append(picasso.centerCrop())
+                .append(";centerInside=").append(picasso.centerInside())
+                .append(";onlyScaleDown=").append(picasso.onlyScaleDown())
+                .append(";rotate=").append(Arrays.toString(picasso.rotate()))
+                .append(";config=").append(binding.hasExplicitConfig() ? picasso.config()
+                        : picasso.autoConfig() ? "auto" : "default")
+                .append(";stableKey=").append(picasso.stableKey())
+                .append(";networkPolicy=").append(Arrays.toString(picasso.networkPolicy()))
+                .append(";transformations=").append(binding.getTransformations());
+        return builder.toString();
+    }
+
+    /**
+     * @return whether the binding uses {@code fit()}, set explicitly or taken from its layout. A
+     * view that wraps its content never does, as in {@link #addLayoutSize}.
+     */
+    private boolean isFit(PicassoBinding binding) {
+        Picasso picasso = binding.getPicasso();
+        LayoutSizes.Size size = binding.getLayoutSize();
+        return picasso.fit() || (size != null && picasso.resize().length != 2 && !size.isFixed()
+                && !size.wrapContent);
+    }
+
+    private boolean hasStaticSource(Picasso picasso) {
+        String url = picasso.url();
+        return (url != null && url.length() != 0) || picasso.drawable() != 0;
+    }
+
+    private String getTransformationField(ClassName transformation) {
+        String field = transformations.get(transformation);
+        if (field == null) {
+            StringBuilder name = new StringBuilder("TRANSFORM");
+            for (String simpleName : transformation.simpleNames()) {
+                name.append('_').append(toConstantName(simpleName));
+            }
+            field = name.toString();
+            //two classes with the same simple name.
+            while (transformations.containsValue(field)) {
+                field += "_";
+            }
+            transformations.put(transformation, field);
+        }
+        return field;
+    }
+
+    /** thumbnailView to THUMBNAIL_VIEW */
+    private static String toConstantName(String name) {
+        return name.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase(Locale.US);
+    }
+
     public boolean containsId(int id) {
         return viewIdMap.containsKey(id);
     }
@@ -0,0 +1,96 @@
+package io.github.phdbrown.autopicasso.compiler;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.TypeSpec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.lang.model.element.TypeElement;
+
+import static javax.lang.model.element.Modifier.FINAL;
+import static javax.lang.model.element.Modifier.PUBLIC;
+
+/**
+ * Auto-Generation Class for the loader index. Maps every annotated target class in the compilation
+ * to a direct constructor call for its generated loader or binder, so that no reflection is needed
+ * at runtime. Subclasses are found at runtime through their indexed superclass.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 2:40 PM Feb 09, 2016
+ */
+final class PicassoIndexClass {
+
+    static final String DEFAULT_INDEX = "io.github.phdbrown.autopicasso.AutoPicassoIndex";
+
+    private static final ClassName INDEX =
+            ClassName.get("io.github.phdbrown.autopicasso.internal", "PicassoIndex");
+
+    /** Target binary name to generated loader. Sorted, so output does not depend on round order */
+    private final Map<String, ClassName> loaders = new TreeMap<>();
+    /** Every target in the index, so incremental builds regenerate it when any of them changes */
+    private final List<TypeElement> originatingElements = new ArrayList<>();
+
+    private final String classPackage;
+    private final String className;
+
+    PicassoIndexClass(String qualifiedName) {
+        int dot = qualifiedName.lastIndexOf('.');
+        this.classPackage = dot < 0 ? "" : qualifiedName.substring(0, dot);
+        this.className = qualifiedName.substring(dot + 1);
+    }
+
+    void addLoader(TypeElement target, String targetName, ClassName loader) {
+        loaders.put(targetName, loader);
+        originatingElements.add(target);
+    }
+
+    boolean isEmpty() {
+        return loaders.isEmpty();
+    }
+
+    JavaFile brewJava() {
+        TypeSpec.Builder result = TypeSpec.classBuilder(className)
+                .addModifiers(PUBLIC, FINAL)
+                .addSuperinterface(INDEX);
+        for (TypeElement element : originatingElements) {
+            result.addOriginatingElement(element);
+        }
+
+        result.addMethod(createNewInstanceMethod());
+
+        return JavaFile.builder(classPackage, result.build())
+                .addFileComment("Generated code from AutoPicasso. Do not modify!")
+                .build();
+    }
+
+    private MethodSpec createNewInstanceMethod() {
+        MethodSpec.Builder result = MethodSpec.methodBuilder("newInstance")
+                .addAnnotation(Override.class)
+                .addModifiers(PUBLIC)
+                .returns(Object.class)
+                .addParameter(String.class, "className");
+
+        CodeBlock.Builder body = CodeBlock.builder().beginControlFlow("switch (className)");
+        for (Map.Entry<String, ClassName> entry : loaders.entrySet()) {
+            body.add("case $S:\n", entry.getKey())
+                    .indent()
+                    .addStatement("return new $T()", entry.getValue())
+                    .unindent();
+        }
+        body.add("default:\n")
+                .indent()
+                .addStatement("return null")
+                .unindent()
+                .endControlFlow();
+        result.addCode(body.build());
+
+        return result.build();
+    }
+}
@@ -1,9 +1,17 @@
 package io.github.phdbrown.autopicasso.compiler;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
+import com.google.common.io.Files;
 import com.google.testing.compile.JavaFileObjects;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 
 import javax.tools.JavaFileObject;
 
@@ -11,6 +19,7 @@ import io.github.phdbrown.autopicasso.compiler.AutoPicassoProcessor;
 
 import static com.google.common.truth.Truth.assertAbout;
 import static com.google.testing.compile.JavaSourceSubjectFactory.javaSource;
+import static com.google.testing.compile.JavaSourcesSubjectFactory.javaSources;
 
 /**
  * TODO Description
@@ -21,6 +30,8 @@ import static com.google.testing.compile.JavaSourceSubjectFactory.javaSource;
  */
 public class PicassoTest {
 
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
     @Test public void compilerTest() {
 
         JavaFileObject source = JavaFileObjects.forSourceString("test.Test",
@@ -39,33 +50,754 @@ public class PicassoTest {
                         "// Generated code from AutoPicasso. Do not modify!",
                         "package test;",
                         "",
-                        "import android.app.Activity;",
+                        "import android.content.Context;",
+                        "import android.view.View;",
+                        "import android.widget.ImageView;",
+                        "import com.squareup.picasso.Picasso;",
+                        "import com.squareup.picasso.Transformation;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoBatch;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoLoader;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoRegistry;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoSpec;",
+                        "import java.lang.IllegalStateException;",
+                        "import java.lang.Override;",
+                        "",
+                        "public class Test$$AutoPicasso implements PicassoLoader<Test> {",
+                        "  private static final PicassoSpec SPEC_THING = new PicassoSpec(Test.class, \"thing\", 1)",
+                        "      .url(\"http://square.github.io/picasso/static/sample.png\")",
+                        "      .coalesce(\"resize=;centerCrop=false;centerInside=false;onlyScaleDown=false;rotate=[];config=default;stableKey=;networkPolicy=[];transformations=[]\");",
+                        "",
+                        "  @Override",
+                        "  public void load(final Test target, final View source, final Transformation[] transformations) {",
+                        "    resolve(target, source);",
+                        "    PicassoBatch batch = new PicassoBatch();",
+                        "    load(target, source, transformations, batch);",
+                        "    batch.submit();",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void resolve(final Test target, final View source) {",
+                        "    View root = source.getRootView();",
+                        "    if (target.thing == null || target.thing.getRootView() != root) {",
+                        "      target.thing = (ImageView) source.findViewById(1);",
+                        "    }",
+                        "    if (target.thing == null) {",
+                        "      throw new IllegalStateException(\"Required view with ID 1 for field 'thing' was not found. If this view is optional add '@Nullable' annotation.\");",
+                        "    }",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void load(final Test target, final View source, final Transformation[] transformations, final PicassoBatch batch) {",
+                        "    Picasso picasso = PicassoRegistry.obtain(target);",
+                        "    SPEC_THING.load(batch, picasso, target.thing, transformations);",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void prefetch(final Context context) {",
+                        "    Picasso picasso = PicassoRegistry.obtain(context);",
+                        "    SPEC_THING.prefetch(picasso, context);",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void preloadDrawables(final Context context) {",
+                        "  }",
+                        "}"
+                ));
+
+        assertAbout(javaSource()).that(source).processedWith(new AutoPicassoProcessor())
+                .compilesWithoutError()
+                .and()
+                .generatesSources(expectedSource);
+    }
+
+    @Test public void holderTest() {
+
+        JavaFileObject source = JavaFileObjects.forSourceString("test.Holder",
+                Joiner.on('\n').join(
+                        "package test;",
+                        "import android.widget.ImageView;",
+                        "import io.github.phdbrown.autopicasso.annotations.Picasso;",
+                        "public class Holder {",
+                        "    @Picasso(value = 1, placeholder = 2) ImageView thing;",
+                        "}"
+                ));
+
+        JavaFileObject expectedSource = JavaFileObjects.forSourceString("test/Holder$$AutoPicasso",
+                Joiner.on('\n').join(
+                        "// Generated code from AutoPicasso. Do not modify!",
+                        "package test;",
+                        "",
+                        "import android.content.Context;",
+                        "import android.view.View;",
+                        "import android.widget.ImageView;",
+                        "import com.squareup.picasso.Picasso;",
+                        "import com.squareup.picasso.Transformation;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoBatch;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoBinder;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoLoader;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoRegistry;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoSpec;",
+                        "import java.lang.IllegalStateException;",
+                        "import java.lang.Object;",
+                        "import java.lang.Override;",
+                        "",
+                        "public class Holder$$AutoPicasso implements PicassoBinder<Holder>, PicassoLoader<Holder> {",
+                        "  public static final int SOURCE_COUNT = 1;",
+                        "",
+                        "  private static final PicassoSpec SPEC_THING = new PicassoSpec(Holder.class, \"thing\", 1)",
+                        "      .placeholder(2)",
+                        "      .coalesce(\"resize=;centerCrop=false;centerInside=false;onlyScaleDown=false;rotate=[];config=default;stableKey=;networkPolicy=[];transformations=[]\");",
+                        "",
+                        "  @Override",
+                        "  public void bind(final Holder holder, final Object[] sources) {",
+                        "    SPEC_THING.bind(holder.thing, sources.length > 0 ? sources[0] : null);",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void load(final Holder target, final View source, final Transformation[] transformations) {",
+                        "    resolve(target, source);",
+                        "    PicassoBatch batch = new PicassoBatch();",
+                        "    load(target, source, transformations, batch);",
+                        "    batch.submit();",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void resolve(final Holder target, final View source) {",
+                        "    View root = source.getRootView();",
+                        "    if (target.thing == null || target.thing.getRootView() != root) {",
+                        "      target.thing = (ImageView) source.findViewById(1);",
+                        "    }",
+                        "    if (target.thing == null) {",
+                        "      throw new IllegalStateException(\"Required view with ID 1 for field 'thing' was not found. If this view is optional add '@Nullable' annotation.\");",
+                        "    }",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void load(final Holder target, final View source, final Transformation[] transformations, final PicassoBatch batch) {",
+                        "    Picasso picasso = PicassoRegistry.obtain(source.getContext());",
+                        "    SPEC_THING.load(batch, picasso, target.thing, transformations);",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void prefetch(final Context context) {",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void preloadDrawables(final Context context) {",
+                        "    SPEC_THING.preloadDrawables(context);",
+                        "  }",
+                        "}"
+                ));
+
+        assertAbout(javaSource()).that(source).processedWith(new AutoPicassoProcessor())
+                .compilesWithoutError()
+                .and()
+                .generatesSources(expectedSource);
+    }
+
+    @Test public void inheritanceTest() {
+
+        JavaFileObject base = JavaFileObjects.forSourceString("test.Base",
+                Joiner.on('\n').join(
+                        "package test;",
+                        "import android.widget.ImageView;",
+                        "import io.github.phdbrown.autopicasso.annotations.Picasso;",
+                        "public class Base {",
+                        "    @Picasso(value = 1) ImageView thing;",
+                        "}"
+                ));
+        JavaFileObject sub = JavaFileObjects.forSourceString("test.Sub",
+                Joiner.on('\n').join(
+                        "package test;",
+                        "import android.widget.ImageView;",
+                        "import io.github.phdbrown.autopicasso.annotations.Picasso;",
+                        "public class Sub extends Base {",
+                        "    @Picasso(value = 2) ImageView other;",
+                        "}"
+                ));
+
+        JavaFileObject expectedBase = JavaFileObjects.forSourceString("test/Base$$AutoPicasso",
+                Joiner.on('\n').join(
+                        "// Generated code from AutoPicasso. Do not modify!",
+                        "package test;",
+                        "",
+                        "import android.content.Context;",
+                        "import android.view.View;",
+                        "import android.widget.ImageView;",
+                        "import com.squareup.picasso.Picasso;",
+                        "import com.squareup.picasso.Transformation;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoBatch;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoBinder;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoLoader;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoRegistry;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoSpec;",
+                        "import java.lang.IllegalStateException;",
+                        "import java.lang.Object;",
+                        "import java.lang.Override;",
+                        "",
+                        "public class Base$$AutoPicasso implements PicassoBinder<Base>, PicassoLoader<Base> {",
+                        "  public static final int SOURCE_COUNT = 1;",
+                        "",
+                        "  private static final PicassoSpec SPEC_THING = new PicassoSpec(Base.class, \"thing\", 1)",
+                        "      .coalesce(\"resize=;centerCrop=false;centerInside=false;onlyScaleDown=false;rotate=[];config=default;stableKey=;networkPolicy=[];transformations=[]\");",
+                        "",
+                        "  @Override",
+                        "  public void bind(final Base holder, final Object[] sources) {",
+                        "    SPEC_THING.bind(holder.thing, sources.length > 0 ? sources[0] : null);",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void load(final Base target, final View source, final Transformation[] transformations) {",
+                        "    resolve(target, source);",
+                        "    PicassoBatch batch = new PicassoBatch();",
+                        "    load(target, source, transformations, batch);",
+                        "    batch.submit();",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void resolve(final Base target, final View source) {",
+                        "    View root = source.getRootView();",
+                        "    if (target.thing == null || target.thing.getRootView() != root) {",
+                        "      target.thing = (ImageView) source.findViewById(1);",
+                        "    }",
+                        "    if (target.thing == null) {",
+                        "      throw new IllegalStateException(\"Required view with ID 1 for field 'thing' was not found. If this view is optional add '@Nullable' annotation.\");",
+                        "    }",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void load(final Base target, final View source, final Transformation[] transformations, final PicassoBatch batch) {",
+                        "    Picasso picasso = PicassoRegistry.obtain(source.getContext());",
+                        "    SPEC_THING.load(batch, picasso, target.thing, transformations);",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void prefetch(final Context context) {",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void preloadDrawables(final Context context) {",
+                        "  }",
+                        "}"
+                ));
+
+        JavaFileObject expectedSub = JavaFileObjects.forSourceString("test/Sub$$AutoPicasso",
+                Joiner.on('\n').join(
+                        "// Generated code from AutoPicasso. Do not modify!",
+                        "package test;",
+                        "",
+                        "import android.content.Context;",
+                        "import android.view.View;",
+                        "import android.widget.ImageView;",
+                        "import com.squareup.picasso.Picasso;",
+                        "import com.squareup.picasso.Transformation;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoBatch;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoBinder;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoLoader;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoRegistry;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoSpec;",
+                        "import java.lang.IllegalStateException;",
+                        "import java.lang.Object;",
+                        "import java.lang.Override;",
+                        "",
+                        "public class Sub$$AutoPicasso implements PicassoBinder<Sub>, PicassoLoader<Sub> {",
+                        "  private static final int OFFSET = Base$$AutoPicasso.SOURCE_COUNT;",
+                        "",
+                        "  public static final int SOURCE_COUNT = OFFSET + 1;",
+                        "",
+                        "  private static final PicassoSpec SPEC_OTHER = new PicassoSpec(Sub.class, \"other\", 2)",
+                        "      .coalesce(\"resize=;centerCrop=false;centerInside=false;onlyScaleDown=false;rotate=[];config=default;stableKey=;networkPolicy=[];transformations=[]\");",
+                        "",
+                        "  private final Base$$AutoPicasso parent = new Base$$AutoPicasso();",
+                        "",
+                        "  @Override",
+                        "  public void bind(final Sub holder, final Object[] sources) {",
+                        "    parent.bind(holder, sources);",
+                        "    SPEC_OTHER.bind(holder.other, sources.length > OFFSET + 0 ? sources[OFFSET + 0] : null);",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void load(final Sub target, final View source, final Transformation[] transformations) {",
+                        "    resolve(target, source);",
+                        "    PicassoBatch batch = new PicassoBatch();",
+                        "    load(target, source, transformations, batch);",
+                        "    batch.submit();",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void resolve(final Sub target, final View source) {",
+                        "    parent.resolve(target, source);",
+                        "    View root = source.getRootView();",
+                        "    if (target.other == null || target.other.getRootView() != root) {",
+                        "      target.other = (ImageView) source.findViewById(2);",
+                        "    }",
+                        "    if (target.other == null) {",
+                        "      throw new IllegalStateException(\"Required view with ID 2 for field 'other' was not found. If this view is optional add '@Nullable' annotation.\");",
+                        "    }",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void load(final Sub target, final View source, final Transformation[] transformations, final PicassoBatch batch) {",
+                        "    parent.load(target, source, transformations, batch);",
+                        "    Picasso picasso = PicassoRegistry.obtain(source.getContext());",
+                        "    SPEC_OTHER.load(batch, picasso, target.other, transformations);",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void prefetch(final Context context) {",
+                        "    parent.prefetch(context);",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void preloadDrawables(final Context context) {",
+                        "    parent.preloadDrawables(context);",
+                        "  }",
+                        "}"
+                ));
+
+        assertAbout(javaSources()).that(Arrays.asList(base, sub))
+                .processedWith(new AutoPicassoProcessor())
+                .compilesWithoutError()
+                .and()
+                .generatesSources(expectedBase, expectedSub);
+    }
+
+    @Test public void sourceTest() {
+
+        JavaFileObject source = JavaFileObjects.forSourceString("test.Holder",
+                Joiner.on('\n').join(
+                        "package test;",
+                        "import android.widget.ImageView;",
+                        "import io.github.phdbrown.autopicasso.annotations.Picasso;",
+                        "public class Holder {",
+                        "    String avatar;",
+                        "    @Picasso(value = 1, source = \"avatar\") ImageView thing;",
+                        "    @Picasso(value = 2, source = \"getIcon\", drawable = 3) ImageView icon;",
+                        "    android.net.Uri getIcon() { return null; }",
+                        "}"
+                ));
+
+        JavaFileObject expectedSource = JavaFileObjects.forSourceString("test/Holder$$AutoPicasso",
+                Joiner.on('\n').join(
+                        "// Generated code from AutoPicasso. Do not modify!",
+                        "package test;",
+                        "",
+                        "import android.content.Context;",
+                        "import android.view.View;",
+                        "import android.widget.ImageView;",
+                        "import com.squareup.picasso.Picasso;",
+                        "import com.squareup.picasso.Transformation;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoBatch;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoBinder;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoLoader;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoRegistry;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoSpec;",
+                        "import java.lang.IllegalStateException;",
+                        "import java.lang.Object;",
+                        "import java.lang.Override;",
+                        "",
+                        "public class Holder$$AutoPicasso implements PicassoBinder<Holder>, PicassoLoader<Holder> {",
+                        "  public static final int SOURCE_COUNT = 2;",
+                        "",
+                        "  private static final PicassoSpec SPEC_THING = new PicassoSpec(Holder.class, \"thing\", 1)",
+                        "      .coalesce(\"resize=;centerCrop=false;centerInside=false;onlyScaleDown=false;rotate=[];config=default;stableKey=;networkPolicy=[];transformations=[]\");",
+                        "",
+                        "  private static final PicassoSpec SPEC_ICON = new PicassoSpec(Holder.class, \"icon\", 2)",
+                        "      .drawable(3)",
+                        "      .coalesce(\"resize=;centerCrop=false;centerInside=false;onlyScaleDown=false;rotate=[];config=default;stableKey=;networkPolicy=[];transformations=[]\");",
+                        "",
+                        "  @Override",
+                        "  public void bind(final Holder holder, final Object[] sources) {",
+                        "    SPEC_THING.bind(holder.thing, sources.length > 0 && sources[0] != null ? sources[0] : holder.avatar);",
+                        "    SPEC_ICON.bind(holder.icon, sources.length > 1 && sources[1] != null ? sources[1] : holder.getIcon());",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void load(final Holder target, final View source, final Transformation[] transformations) {",
+                        "    resolve(target, source);",
+                        "    PicassoBatch batch = new PicassoBatch();",
+                        "    load(target, source, transformations, batch);",
+                        "    batch.submit();",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void resolve(final Holder target, final View source) {",
+                        "    View root = source.getRootView();",
+                        "    if (target.thing == null || target.thing.getRootView() != root) {",
+                        "      target.thing = (ImageView) source.findViewById(1);",
+                        "    }",
+                        "    if (target.thing == null) {",
+                        "      throw new IllegalStateException(\"Required view with ID 1 for field 'thing' was not found. If this view is optional add '@Nullable' annotation.\");",
+                        "    }",
+                        "    if (target.icon == null || target.icon.getRootView() != root) {",
+                        "      target.icon = (ImageView) source.findViewById(2);",
+                        "    }",
+                        "    if (target.icon == null) {",
+                        "      throw new IllegalStateException(\"Required view with ID 2 for field 'icon' was not found. If this view is optional add '@Nullable' annotation.\");",
+                        "    }",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void load(final Holder target, final View source, final Transformation[] transformations, final PicassoBatch batch) {",
+                        "    Picasso picasso = PicassoRegistry.obtain(source.getContext());",
+                        "    SPEC_THING.load(batch, picasso, target.thing, target.avatar, transformations);",
+                        "    SPEC_ICON.load(batch, picasso, target.icon, target.getIcon(), transformations);",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void prefetch(final Context context) {",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void preloadDrawables(final Context context) {",
+                        "  }",
+                        "}"
+                ));
+
+        assertAbout(javaSource()).that(source).processedWith(new AutoPicassoProcessor())
+                .compilesWithoutError()
+                .and()
+                .generatesSources(expectedSource);
+    }
+
+    @Test public void invalidOptionsTest() {
+
+        JavaFileObject source = JavaFileObjects.forSourceString("test.Holder",
+                Joiner.on('\n').join(
+                        "package test;",
+                        "import android.widget.ImageView;",
+                        "import io.github.phdbrown.autopicasso.annotations.Picasso;",
+                        "public class Holder {",
+                        "    @Picasso(value = 1, resize = {10}) ImageView a;",
+                        "    @Picasso(value = 2, resize = {10, 10}, centerCrop = true, centerInside = true) ImageView b;",
+                        "    @Picasso(value = 3, centerCrop = true) ImageView c;",
+                        "    @Picasso(value = 4, url = \"http://a/b.png\", adaptiveUrl = \"http://a/b.png?w={width}\") ImageView d;",
+                        "}"
+                ));
+
+        assertAbout(javaSource()).that(source).processedWith(new AutoPicassoProcessor())
+                .failsToCompile()
+                .withErrorContaining("@Picasso resize must have a width and a height. Found 1 values.").and()
+                .withErrorContaining("@Picasso centerCrop and centerInside cannot be used together.").and()
+                .withErrorContaining("@Picasso centerCrop requires resize or fit.").and()
+                .withErrorContaining("@Picasso adaptiveUrl cannot be used with url or drawable.");
+    }
+
+    @Test public void transformationTest() {
+
+        JavaFileObject source = JavaFileObjects.forSourceString("test.Holder",
+                Joiner.on('\n').join(
+                        "package test;",
+                        "import android.graphics.Bitmap;",
+                        "import android.widget.ImageView;",
+                        "import com.squareup.picasso.Transformation;",
+                        "import io.github.phdbrown.autopicasso.annotations.Picasso;",
+                        "public class Holder {",
+                        "    public static class Round implements Transformation {",
+                        "        @Override public Bitmap transform(Bitmap source) { return source; }",
+                        "        @Override public String key() { return \"round\"; }",
+                        "    }",
+                        "    @Picasso(value = 1, url = \"http://a/b.png\", transformations = Round.class) ImageView thing;",
+                        "}"
+                ));
+
+        JavaFileObject expectedSource = JavaFileObjects.forSourceString("test/Holder$$AutoPicasso",
+                Joiner.on('\n').join(
+                        "// Generated code from AutoPicasso. Do not modify!",
+                        "package test;",
+                        "",
+                        "import android.content.Context;",
+                        "import android.view.View;",
+                        "import android.widget.ImageView;",
+                        "import com.squareup.picasso.Picasso;",
+                        "import com.squareup.picasso.Transformation;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoBatch;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoBinder;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoLoader;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoRegistry;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoSpec;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoTransformations;",
+                        "import java.lang.IllegalStateException;",
+                        "import java.lang.Object;",
+                        "import java.lang.Override;",
+                        "",
+                        "public class Holder$$AutoPicasso implements PicassoBinder<Holder>, PicassoLoader<Holder> {",
+                        "  public static final int SOURCE_COUNT = 1;",
+                        "",
+                        "  private static final Transformation TRANSFORM_HOLDER_ROUND = PicassoTransformations.share(new Holder.Round());",
+                        "",
+                        "  private static final PicassoSpec SPEC_THING = new PicassoSpec(Holder.class, \"thing\", 1)",
+                        "      .url(\"http://a/b.png\")",
+                        "      .transform(TRANSFORM_HOLDER_ROUND)",
+                        "      .coalesce(\"resize=;centerCrop=false;centerInside=false;onlyScaleDown=false;rotate=[];config=default;stableKey=;networkPolicy=[];transformations=[test.Holder.Round]\");",
+                        "",
+                        "  @Override",
+                        "  public void bind(final Holder holder, final Object[] sources) {",
+                        "    SPEC_THING.bind(holder.thing, sources.length > 0 ? sources[0] : null);",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void load(final Holder target, final View source, final Transformation[] transformations) {",
+                        "    resolve(target, source);",
+                        "    PicassoBatch batch = new PicassoBatch();",
+                        "    load(target, source, transformations, batch);",
+                        "    batch.submit();",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void resolve(final Holder target, final View source) {",
+                        "    View root = source.getRootView();",
+                        "    if (target.thing == null || target.thing.getRootView() != root) {",
+                        "      target.thing = (ImageView) source.findViewById(1);",
+                        "    }",
+                        "    if (target.thing == null) {",
+                        "      throw new IllegalStateException(\"Required view with ID 1 for field 'thing' was not found. If this view is optional add '@Nullable' annotation.\");",
+                        "    }",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void load(final Holder target, final View source, final Transformation[] transformations, final PicassoBatch batch) {",
+                        "    Picasso picasso = PicassoRegistry.obtain(source.getContext());",
+                        "    SPEC_THING.load(batch, picasso, target.thing, transformations);",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void prefetch(final Context context) {",
+                        "    Picasso picasso = PicassoRegistry.obtain(context);",
+                        "    SPEC_THING.prefetch(picasso, context);",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void preloadDrawables(final Context context) {",
+                        "  }",
+                        "}"
+                ));
+
+        assertAbout(javaSource()).that(source).processedWith(new AutoPicassoProcessor())
+                .compilesWithoutError()
+                .and()
+                .generatesSources(expectedSource);
+    }
+
+    @Test public void zeroLayoutSizeTest() throws IOException {
+
+        File layout = folder.newFolder("res", "layout");
+        Files.write(Joiner.on('\n').join(
+                "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\">",
+                "    <ImageView android:id=\"@+id/thing\" android:layout_width=\"0dp\" android:layout_height=\"0dp\"/>",
+                "    <ImageView android:id=\"@+id/banner\" android:layout_width=\"0dp\" android:layout_height=\"48dp\"/>",
+                "</LinearLayout>"), new File(layout, "holder.xml"), Charsets.UTF_8);
+        JavaFileObject r = JavaFileObjects.forSourceString("test.R",
+                Joiner.on('\n').join(
+                        "package test;",
+                        "public final class R {",
+                        "    public static final class id {",
+                        "        public static final int thing = 1;",
+                        "        public static final int banner = 2;",
+                        "    }",
+                        "}"
+                ));
+        JavaFileObject source = JavaFileObjects.forSourceString("test.Holder",
+                Joiner.on('\n').join(
+                        "package test;",
+                        "import android.widget.ImageView;",
+                        "import io.github.phdbrown.autopicasso.annotations.Picasso;",
+                        "public class Holder {",
+                        "    @Picasso(value = R.id.thing, url = \"http://a/b.png\") ImageView thing;",
+                        "    @Picasso(value = R.id.banner, url = \"http://a/c.png\") ImageView banner;",
+                        "}"
+                ));
+
+        JavaFileObject expectedSource = JavaFileObjects.forSourceString("test/Holder$$AutoPicasso",
+                Joiner.on('\n').join(
+                        "// Generated code from AutoPicasso. Do not modify!",
+                        "package test;",
+                        "",
+                        "import android.content.Context;",
+                        "import android.view.View;",
                         "import android.widget.ImageView;",
-                        "import com.squareup.picasso.Picasso",
-                        "import com.squareup.picasso.RequestCreator",
-                        "import com.squareup.picasso.Transformation",
-                        "import io.github.phdbrown.autopicasso.internal.PicassoLoader",
+                        "import com.squareup.picasso.Picasso;",
+                        "import com.squareup.picasso.Transformation;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoBatch;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoBinder;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoLoader;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoRegistry;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoSpec;",
+                        "import java.lang.IllegalStateException;",
+                        "import java.lang.Object;",
                         "import java.lang.Override;",
-                        "import java.lang.SuppressWarnings;",
                         "",
-                        "public class Test$$AutoPicasso implements PicassoLoader {",
+                        "public class Holder$$AutoPicasso implements PicassoBinder<Holder>, PicassoLoader<Holder> {",
+                        "  public static final int SOURCE_COUNT = 2;",
+                        "",
+                        "  private static final PicassoSpec SPEC_THING = new PicassoSpec(Holder.class, \"thing\", 1)",
+                        "      .url(\"http://a/b.png\")",
+                        "      .fit()",
+                        "      .centerInside()",
+                        "      .onlyScaleDown();",
+                        "",
+                        "  private static final PicassoSpec SPEC_BANNER = new PicassoSpec(Holder.class, \"banner\", 2)",
+                        "      .url(\"http://a/c.png\")",
+                        "      .fit()",
+                        "      .centerInside()",
+                        "      .onlyScaleDown();",
+                        "",
+                        "  @Override",
+                        "  public void bind(final Holder holder, final Object[] sources) {",
+                        "    SPEC_THING.bind(holder.thing, sources.length > 0 ? sources[0] : null);",
+                        "    SPEC_BANNER.bind(holder.banner, sources.length > 1 ? sources[1] : null);",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void load(final Holder target, final View source, final Transformation[] transformations) {",
+                        "    resolve(target, source);",
+                        "    PicassoBatch batch = new PicassoBatch();",
+                        "    load(target, source, transformations, batch);",
+                        "    batch.submit();",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void resolve(final Holder target, final View source) {",
+                        "    View root = source.getRootView();",
+                        "    if (target.thing == null || target.thing.getRootView() != root) {",
+                        "      target.thing = (ImageView) source.findViewById(1);",
+                        "    }",
+                        "    if (target.thing == null) {",
+                        "      throw new IllegalStateException(\"Required view with ID 1 for field 'thing' was not found. If this view is optional add '@Nullable' annotation.\");",
+                        "    }",
+                        "    if (target.banner == null || target.banner.getRootView() != root) {",
+                        "      target.banner = (ImageView) source.findViewById(2);",
+                        "    }",
+                        "    if (target.banner == null) {",
+                        "      throw new IllegalStateException(\"Required view with ID 2 for field 'banner' was not found. If this view is optional add '@Nullable' annotation.\");",
+                        "    }",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void load(final Holder target, final View source, final Transformation[] transformations, final PicassoBatch batch) {",
+                        "    Picasso picasso = PicassoRegistry.obtain(source.getContext());",
+                        "    SPEC_THING.load(batch, picasso, target.thing, transformations);",
+                        "    SPEC_BANNER.load(batch, picasso, target.banner, transformations);",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void prefetch(final Context context) {",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void preloadDrawables(final Context context) {",
+                        "  }",
+                        "}"
+                ));
+
+        assertAbout(javaSources()).that(Arrays.asList(r, source))
+                .withCompilerOptions("-AautoPicassoResDir=" + layout.getParent())
+                .processedWith(new AutoPicassoProcessor())
+                .compilesWithoutError()
+                .and()
+                .generatesSources(expectedSource);
+    }
+
+    @Test public void wrapContentLayoutSizeTest() throws IOException {
+
+        File layout = folder.newFolder("res", "layout");
+        Files.write(Joiner.on('\n').join(
+                "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\">",
+                "    <ImageView android:id=\"@+id/thing\" android:layout_width=\"wrap_content\" android:layout_height=\"48dp\"/>",
+                "</LinearLayout>"), new File(layout, "holder.xml"), Charsets.UTF_8);
+        JavaFileObject r = JavaFileObjects.forSourceString("test.R",
+                Joiner.on('\n').join(
+                        "package test;",
+                        "public final class R {",
+                        "    public static final class id {",
+                        "        public static final int thing = 1;",
+                        "    }",
+                        "}"
+                ));
+        JavaFileObject source = JavaFileObjects.forSourceString("test.Holder",
+                Joiner.on('\n').join(
+                        "package test;",
+                        "import android.widget.ImageView;",
+                        "import io.github.phdbrown.autopicasso.annotations.Picasso;",
+                        "public class Holder {",
+                        "    @Picasso(value = R.id.thing, url = \"http://a/b.png\") ImageView thing;",
+                        "}"
+                ));
+
+        JavaFileObject expectedSource = JavaFileObjects.forSourceString("test/Holder$$AutoPicasso",
+                Joiner.on('\n').join(
+                        "// Generated code from AutoPicasso. Do not modify!",
+                        "package test;",
+                        "",
+                        "import android.content.Context;",
+                        "import android.view.View;",
+                        "import android.widget.ImageView;",
+                        "import com.squareup.picasso.Picasso;",
+                        "import com.squareup.picasso.Transformation;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoBatch;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoBinder;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoLoader;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoRegistry;",
+                        "import io.github.phdbrown.autopicasso.internal.PicassoSpec;",
+                        "import java.lang.IllegalStateException;",
+                        "import java.lang.Object;",
+                        "import java.lang.Override;",
+                        "",
+                        "public class Holder$$AutoPicasso implements PicassoBinder<Holder>, PicassoLoader<Holder> {",
+                        "  public static final int SOURCE_COUNT = 1;",
+                        "",
+                        "  private static final PicassoSpec SPEC_THING = new PicassoSpec(Holder.class, \"thing\", 1)",
+                        "      .url(\"http://a/b.png\")",
+                        "      .coalesce(\"resize=;centerCrop=false;centerInside=false;onlyScaleDown=false;rotate=[];config=default;stableKey=;networkPolicy=[];transformations=[]\");",
+                        "",
+                        "  @Override",
+                        "  public void bind(final Holder holder, final Object[] sources) {",
+                        "    SPEC_THING.bind(holder.thing, sources.length > 0 ? sources[0] : null);",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void load(final Holder target, final View source, final Transformation[] transformations) {",
+                        "    resolve(target, source);",
+                        "    PicassoBatch batch = new PicassoBatch();",
+                        "    load(target, source, transformations, batch);",
+                        "    batch.submit();",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void resolve(final Holder target, final View source) {",
+                        "    View root = source.getRootView();",
+                        "    if (target.thing == null || target.thing.getRootView() != root) {",
+                        "      target.thing = (ImageView) source.findViewById(1);",
+                        "    }",
+                        "    if (target.thing == null) {",
+                        "      throw new IllegalStateException(\"Required view with ID 1 for field 'thing' was not found. If this view is optional add '@Nullable' annotation.\");",
+                        "    }",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void load(final Holder target, final View source, final Transformation[] transformations, final PicassoBatch batch) {",
+                        "    Picasso picasso = PicassoRegistry.obtain(source.getContext());",
+                        "    SPEC_THING.load(batch, picasso, target.thing, transformations);",
+                        "  }",
+                        "",
+                        "  @Override",
+                        "  public void prefetch(final Context context) {",
+                        "    Picasso picasso = PicassoRegistry.obtain(context);",
+                        "    SPEC_THING.prefetch(picasso, context);",
+                        "  }",
+                        "",
                         "  @Override",
-                        "  @SuppressWarnings(\"ResourceType\")\"",
-                        "  public void load(final Activity activity, final Transformation[] transformations) {",
-                        "    ImageView view;",
-                        "    Picasso picasso;",
-                        "    view = (ImageView) activity.findViewById(1);",
-                        "    picasso = Picasso.with(activity);",
-                        "    RequestCreator creator = picasso.load(\"http://square.github.io/picasso/static/sample.png\");",
-                        "    creator.config(android.graphics.Bitmap.Config.ARGB_8888);",
-                        "    creator.priority(com.squareup.picasso.Picasso.Priority.NORMAL);",
-                        "    for (Transformation t : transformations) { creator.transform(t); };",
-                        "    creator.into(view);",
+                        "  public void preloadDrawables(final Context context) {",
                         "  }",
                         "}"
                 ));
 
-        assertAbout(javaSource()).that(source).processedWith(new AutoPicassoProcessor()).compilesWithoutError();//FIXME  .and().generatesSources(expectedSource);
+        assertAbout(javaSources()).that(Arrays.asList(r, source))
+                .withCompilerOptions("-AautoPicassoResDir=" + layout.getParent())
+                .processedWith(new AutoPicassoProcessor())
+                .compilesWithoutError()
+                .and()
+                .generatesSources(expectedSource);
     }
 
 }
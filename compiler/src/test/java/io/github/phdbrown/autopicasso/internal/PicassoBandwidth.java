@@ -0,0 +1,16 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.content.Context;
+
+/**
+ * Generated Class dependency skeleton
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 2:10 PM Feb 19, 2016
+ */
+public final class PicassoBandwidth {
+    public static String url(Context context, String template, int width) {
+        return template;
+    }
+}
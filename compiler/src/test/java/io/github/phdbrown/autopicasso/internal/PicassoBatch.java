@@ -0,0 +1,37 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.graphics.drawable.Drawable;
+import android.widget.ImageView;
+
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+import com.squareup.picasso.Transformation;
+
+/**
+ * Generated Class dependency skeleton
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 11:20 AM Feb 17, 2016
+ */
+public final class PicassoBatch {
+    public static String key(Object source, String options, Transformation[] transformations) {
+        return null;
+    }
+
+    public static String key(String base, Transformation[] transformations) {
+        return base;
+    }
+
+    public void add(Picasso picasso, Factory factory, ImageView view, String key, Object tag,
+                    Picasso.Priority priority, Drawable placeholder, Callback callback) {
+    }
+
+    public void submit() {
+    }
+
+    public interface Factory {
+        RequestCreator create();
+    }
+}
@@ -0,0 +1,17 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+/**
+ * Generated Class dependency skeleton
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 10:40 AM Feb 17, 2016
+ */
+public final class PicassoConfigs {
+    public static Bitmap.Config select(Context context, boolean opaque) {
+        return null;
+    }
+}
@@ -0,0 +1,16 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.content.Context;
+
+/**
+ * Generated Class dependency skeleton
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 3:05 PM Feb 15, 2016
+ */
+public final class PicassoDimensions {
+    public static int dpToPx(Context context, float dp) {
+        return 0;
+    }
+}
@@ -0,0 +1,20 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Generated Class dependency skeleton
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 10:40 AM Feb 19, 2016
+ */
+public final class PicassoDrawables {
+    public static Drawable get(Context context, int resId, int width, int height) {
+        return null;
+    }
+
+    public static void preload(Context context, int resId, int width, int height) {
+    }
+}
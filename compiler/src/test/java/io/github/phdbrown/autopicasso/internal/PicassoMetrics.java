@@ -0,0 +1,18 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.widget.ImageView;
+
+import com.squareup.picasso.Callback;
+
+/**
+ * Generated Class dependency skeleton
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 9:15 AM Feb 19, 2016
+ */
+public final class PicassoMetrics {
+    public static Callback track(ImageView view, Class<?> target, String field, int id, Object source) {
+        return null;
+    }
+}
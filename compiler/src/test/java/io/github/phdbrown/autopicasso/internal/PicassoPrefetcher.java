@@ -0,0 +1,16 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+
+/**
+ * Generated Class dependency skeleton
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 11:30 AM Feb 12, 2016
+ */
+public final class PicassoPrefetcher {
+    public static void enqueue(Picasso picasso, RequestCreator creator) {
+    }
+}
@@ -0,0 +1,27 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.app.Activity;
+import android.content.Context;
+
+import com.squareup.picasso.Picasso;
+
+/**
+ * Generated Class dependency skeleton
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 10:02 AM Feb 09, 2016
+ */
+public final class PicassoRegistry {
+    public static Picasso obtain(Activity activity) {
+        return null;
+    }
+
+    public static Picasso obtain(Context context) {
+        return null;
+    }
+
+    public static Object host(Context context) {
+        return null;
+    }
+}
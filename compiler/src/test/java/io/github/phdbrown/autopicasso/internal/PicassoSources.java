@@ -0,0 +1,28 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.widget.ImageView;
+
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+
+/**
+ * Generated Class dependency skeleton
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 4:12 PM Feb 10, 2016
+ */
+public final class PicassoSources {
+    public static RequestCreator load(Picasso picasso, Object source) {
+        return null;
+    }
+
+    public static boolean isShowing(ImageView view, Object source) {
+        return false;
+    }
+
+    public static Callback remember(ImageView view, Object source, Callback callback) {
+        return callback;
+    }
+}
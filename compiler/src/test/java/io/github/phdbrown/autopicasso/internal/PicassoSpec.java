@@ -0,0 +1,138 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.widget.ImageView;
+
+import com.squareup.picasso.MemoryPolicy;
+import com.squareup.picasso.NetworkPolicy;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.Transformation;
+
+/**
+ * Generated Class dependency skeleton
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 3:30 PM Feb 24, 2016
+ */
+public final class PicassoSpec {
+    public PicassoSpec(Class<?> target, String field, int id) {
+    }
+
+    public PicassoSpec optional() {
+        return this;
+    }
+
+    public PicassoSpec url(String url) {
+        return this;
+    }
+
+    public PicassoSpec drawable(int resId) {
+        return this;
+    }
+
+    public PicassoSpec adaptiveUrl(String template) {
+        return this;
+    }
+
+    public PicassoSpec placeholder(int resId) {
+        return this;
+    }
+
+    public PicassoSpec error(int resId) {
+        return this;
+    }
+
+    public PicassoSpec tag(String tag) {
+        return this;
+    }
+
+    public PicassoSpec fit() {
+        return this;
+    }
+
+    public PicassoSpec resize(int width, int height) {
+        return this;
+    }
+
+    public PicassoSpec resizeDp(float width, float height) {
+        return this;
+    }
+
+    public PicassoSpec centerCrop() {
+        return this;
+    }
+
+    public PicassoSpec centerInside() {
+        return this;
+    }
+
+    public PicassoSpec onlyScaleDown() {
+        return this;
+    }
+
+    public PicassoSpec rotate(float... rotate) {
+        return this;
+    }
+
+    public PicassoSpec config(Bitmap.Config config) {
+        return this;
+    }
+
+    public PicassoSpec autoConfig(boolean opaque) {
+        return this;
+    }
+
+    public PicassoSpec stableKey(String stableKey) {
+        return this;
+    }
+
+    public PicassoSpec priority(Picasso.Priority priority) {
+        return this;
+    }
+
+    public PicassoSpec memoryPolicy(MemoryPolicy... memoryPolicy) {
+        return this;
+    }
+
+    public PicassoSpec networkPolicy(NetworkPolicy... networkPolicy) {
+        return this;
+    }
+
+    public PicassoSpec noFade() {
+        return this;
+    }
+
+    public PicassoSpec log() {
+        return this;
+    }
+
+    public PicassoSpec indicators() {
+        return this;
+    }
+
+    public PicassoSpec transform(Transformation... transformations) {
+        return this;
+    }
+
+    public PicassoSpec coalesce(String options) {
+        return this;
+    }
+
+    public void load(PicassoBatch batch, Picasso picasso, ImageView view, Transformation[] transformations) {
+    }
+
+    public void load(PicassoBatch batch, Picasso picasso, ImageView view, Object source,
+                     Transformation[] transformations) {
+    }
+
+    public void bind(ImageView view, Object source) {
+    }
+
+    public void prefetch(Picasso picasso, Context context) {
+    }
+
+    public void preloadDrawables(Context context) {
+    }
+}
@@ -0,0 +1,16 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import com.squareup.picasso.Transformation;
+
+/**
+ * Generated Class dependency skeleton
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 9:45 AM Feb 18, 2016
+ */
+public final class PicassoTransformations {
+    public static Transformation share(Transformation transformation) {
+        return transformation;
+    }
+}
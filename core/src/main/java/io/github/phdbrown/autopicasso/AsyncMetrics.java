@@ -0,0 +1,43 @@
+package io.github.phdbrown.autopicasso;
+
+/**
+ * Main thread time of the loads started with {@code AutoPicasso.loadAsync}, summed since the last
+ * reset. Building the requests is the time taken off the main thread, which a synchronous load
+ * would have spent there before the first frame.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 9:30 AM Feb 22, 2016
+ */
+public final class AsyncMetrics {
+
+    /** Number of committed loads */
+    public final int count;
+    /** Time spent finding views, on the main thread */
+    public final long resolveNanos;
+    /** Time spent building requests, on a background thread */
+    public final long prepareNanos;
+    /** Time spent starting the batched requests, on the main thread */
+    public final long commitNanos;
+
+    public AsyncMetrics(int count, long resolveNanos, long prepareNanos, long commitNanos) {
+        this.count = count;
+        this.resolveNanos = resolveNanos;
+        this.prepareNanos = prepareNanos;
+        this.commitNanos = commitNanos;
+    }
+
+    /** @return the main thread time saved per load, in nanoseconds. */
+    public long averageSavedNanos() {
+        return count == 0 ? 0 : prepareNanos / count;
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncMetrics{count=" + count
+                + ", resolveNanos=" + resolveNanos
+                + ", prepareNanos=" + prepareNanos
+                + ", commitNanos=" + commitNanos
+                + '}';
+    }
+}
@@ -1,18 +1,35 @@
 package io.github.phdbrown.autopicasso;
 
 import android.app.Activity;
+import android.content.Context;
+import android.os.Process;
 import android.support.annotation.NonNull;
 import android.util.Log;
+import android.view.View;
 
+import com.squareup.picasso.Picasso;
 import com.squareup.picasso.Transformation;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import io.github.phdbrown.autopicasso.internal.PicassoAsync;
+import io.github.phdbrown.autopicasso.internal.PicassoBandwidth;
+import io.github.phdbrown.autopicasso.internal.PicassoBatch;
+import io.github.phdbrown.autopicasso.internal.PicassoBinder;
+import io.github.phdbrown.autopicasso.internal.PicassoIndex;
 import io.github.phdbrown.autopicasso.internal.PicassoLoader;
+import io.github.phdbrown.autopicasso.internal.PicassoMetrics;
+import io.github.phdbrown.autopicasso.internal.PicassoPrefetcher;
+import io.github.phdbrown.autopicasso.internal.PicassoRegistry;
+import io.github.phdbrown.autopicasso.internal.PicassoTrim;
 
 /**
- * Loader. This is used to run the generated code from the Activity.
+ * Loader. This is used to run the generated code from the Activity, Fragment, View or view holder.
  * <br>
  *
  * @author Phil Brown
@@ -20,56 +37,461 @@ import io.github.phdbrown.autopicasso.internal.PicassoLoader;
  */
 public final class AutoPicasso {
 
-    static final Map<Class<?>, PicassoLoader> LOADERS = new LinkedHashMap<>();
-    static final PicassoLoader NOP_LOADER = new PicassoLoader() {
-        @Override
-        public void load(Activity activity, Transformation[] transformations) {
-        }
-    };
+    /**
+     * Generated {@link PicassoLoader}s and {@link PicassoBinder}s by target class. Reads never
+     * block. Misses are resolved under {@link #LOADER_LOCK} so each loader is created once.
+     */
+    static final ConcurrentMap<Class<?>, Object> LOADERS = new ConcurrentHashMap<>();
+    static final Object NOP_LOADER = new NopLoader();
 
+    static final List<PicassoIndex> INDICES = new CopyOnWriteArrayList<>();
+
+    /** Passed by the overloads without transformations, instead of a new empty varargs array */
+    private static final Transformation[] NO_TRANSFORMATIONS = new Transformation[0];
     private static final String TAG = "AutoPicasso";
-    private static boolean debug = false;
+    private static final String DEFAULT_INDEX = "io.github.phdbrown.autopicasso.AutoPicassoIndex";
+    private static final Object LOADER_LOCK = new Object();
+    private static final AtomicInteger HITS = new AtomicInteger();
+    private static final AtomicInteger MISSES = new AtomicInteger();
+    private static volatile boolean debug = false;
+    private static boolean defaultIndexLoaded = false;
 
     /** Control whether debug logging is enabled. */
     public static void setDebug(boolean debug) {
         AutoPicasso.debug = debug;
     }
 
+    /**
+     * Register a generated loader index. Loaders found in an index are created directly, without
+     * reflection. The application's own index is picked up automatically; libraries compiled with
+     * the {@code autoPicassoIndex} processor option must register theirs here. Builds that set the
+     * option to {@code none} get no index, and their loaders are found through reflection.
+     */
+    public static void addIndex(PicassoIndex index) {
+        INDICES.add(index);
+    }
+
+    /**
+     * Resolve and cache the loaders for the given classes ahead of time, for example from
+     * {@link android.app.Application#onCreate()}, so that the first {@link #load} of each screen
+     * does not pay for the lookup. Safe to call from a background thread.
+     */
+    public static void preload(Class<?>... classes) {
+        for (Class<?> cls : classes) {
+            try {
+                findViewBinderForClass(cls);
+            } catch (Exception e) {
+                throw new RuntimeException("Unable to preload view binder for " + cls.getName(), e);
+            }
+        }
+    }
+
+    public static void load(Activity activity) {
+        load(activity, activity.getWindow().getDecorView(), NO_TRANSFORMATIONS);
+    }
+
+    /**
+     * Apply the given transformations to every binding, after the ones declared on the annotation.
+     * Prefer {@link io.github.phdbrown.autopicasso.annotations.Picasso#transformations()}, which
+     * shares one instance per class instead of a new array and instances on every call.
+     */
     public static void load(Activity activity, Transformation... transformations) {
-        Class<?> targetClass = activity.getClass();
+        load(activity, activity.getWindow().getDecorView(), transformations);
+    }
+
+    /** Load the images of a custom View's own {@code @Picasso} fields, found among its children. */
+    public static void load(View view) {
+        load(view, view, NO_TRANSFORMATIONS);
+    }
+
+    public static void load(View view, Transformation... transformations) {
+        load(view, view, transformations);
+    }
+
+    /** See {@link #load(Object, View, Transformation...)}. */
+    public static void load(Object target, View source) {
+        load(target, source, NO_TRANSFORMATIONS);
+    }
+
+    /**
+     * Load the images of any target with {@code @Picasso} fields, such as a Fragment or view
+     * holder, finding its views under the given source. Only this target's images are loaded, so a
+     * Fragment can refresh itself from {@code onViewCreated} with {@code load(this, view)} without
+     * reloading the rest of the screen.
+     */
+    public static void load(Object target, View source, Transformation... transformations) {
+        Class<?> targetClass = target.getClass();
+        try {
+            if (debug) Log.d(TAG, "Looking up view binder for " + targetClass.getName());
+            //noinspection unchecked
+            PicassoLoader<Object> loader =
+                    (PicassoLoader<Object>) findViewBinderForClass(targetClass);
+            loader.load(target, source, transformations);
+        } catch (Exception e) {
+            throw new RuntimeException("Unable to bind views for " + targetClass.getName(), e);
+        }
+    }
+
+    /**
+     * Like {@link #load(Activity)}, but only the views are found on the calling thread. The
+     * requests are built on a background thread, and then started together by one main thread
+     * message, so screens with many bindings spend less of their first frame on images. Use
+     * {@link #getAsyncMetrics()} to see how much main thread time this saves. Main thread only.
+     * <p>
+     * The fields and methods named by {@code @Picasso(source = ...)} are read on that background
+     * thread, so they must be safe to read from it. Nothing is started if the Activity is finishing
+     * or was destroyed by the time the requests are built.
+     */
+    public static void loadAsync(Activity activity) {
+        loadAsync(activity, activity.getWindow().getDecorView(), NO_TRANSFORMATIONS);
+    }
+
+    /**
+     * Like {@link #load(Object, View)}, with the requests built on a background thread, where the
+     * target's {@code @Picasso(source = ...)} fields and methods are read too.
+     */
+    public static void loadAsync(Object target, View source) {
+        loadAsync(target, source, NO_TRANSFORMATIONS);
+    }
+
+    /**
+     * Like {@link #load(Object, View, Transformation...)}, with the requests built on a background
+     * thread. The target's {@code @Picasso(source = ...)} fields and methods are read on that
+     * thread too. The transformations must be safe to share across threads, as with any Picasso
+     * request.
+     */
+    public static void loadAsync(Object target, View source, Transformation... transformations) {
+        Class<?> targetClass = target.getClass();
+        try {
+            if (debug) Log.d(TAG, "Looking up view binder for " + targetClass.getName());
+            //noinspection unchecked
+            PicassoLoader<Object> loader =
+                    (PicassoLoader<Object>) findViewBinderForClass(targetClass);
+            PicassoAsync.load(loader, target, source, transformations);
+        } catch (Exception e) {
+            throw new RuntimeException("Unable to bind views for " + targetClass.getName(), e);
+        }
+    }
+
+    /** @return the main thread time of the {@code loadAsync} loads since the last reset. */
+    public static AsyncMetrics getAsyncMetrics() {
+        return PicassoAsync.snapshot();
+    }
+
+    public static void resetAsyncMetrics() {
+        PicassoAsync.reset();
+    }
+
+    /**
+     * Fetch the images of the given target classes into the memory and disk caches ahead of time,
+     * so they are ready when those screens open. Requests use the same resize, config and stableKey
+     * as the target's own bindings, but run at {@link Picasso.Priority#LOW} and at most
+     * {@link #setPrefetchLimit(int) a few at a time}, so they never hold up visible loads.
+     * Bindings without a compile-time url or drawable are skipped.
+     */
+    public static void prefetch(Context context, Class<?>... targetClasses) {
+        for (Class<?> cls : targetClasses) {
+            try {
+                Object loader = findViewBinderForClass(cls);
+                if (loader instanceof PicassoLoader) {
+                    ((PicassoLoader<?>) loader).prefetch(context);
+                }
+            } catch (Exception e) {
+                throw new RuntimeException("Unable to prefetch images for " + cls.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Decode the placeholder and error drawables of the given target classes on a background
+     * thread, e.g. at startup, so that the first load of those screens does not decode them on the
+     * main thread. Drawables are kept in a small shared cache, at the size of the views they are
+     * shown in.
+     */
+    public static void preloadDrawables(Context context, final Class<?>... targetClasses) {
+        final Context appContext = context.getApplicationContext();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                for (Class<?> cls : targetClasses) {
+                    try {
+                        Object loader = findViewBinderForClass(cls);
+                        if (loader instanceof PicassoLoader) {
+                            ((PicassoLoader<?>) loader).preloadDrawables(appContext);
+                        }
+                    } catch (Exception e) {
+                        Log.w(TAG, "Unable to preload drawables for " + cls.getName(), e);
+                    }
+                }
+            }
+        }, "AutoPicasso-Drawables").start();
+    }
+
+    /**
+     * Measure the connection's throughput from completed loads, and adapt to it: while it is slow,
+     * cached images are used however stale they are, and {@code @Picasso.adaptiveUrl} bindings ask
+     * for smaller, lower quality renditions. Call from {@code Application.onCreate}, before
+     * anything uses the default Picasso instance, so that its loads are measured too.
+     */
+    public static void enableAdaptiveLoading(Context context) {
+        PicassoBandwidth.enable(context);
+    }
+
+    /**
+     * Cache downloaded images in the given directory, evicting the least recently used ones beyond
+     * the given size, instead of relying on the platform's HTTP cache. Entries never expire, since
+     * image urls rarely change content. Applies to the Picasso instances AutoPicasso creates,
+     * including the default instance unless the app set it up itself, so call from
+     * {@code Application.onCreate}, before the first load.
+     */
+    public static void setDiskCache(File directory, long maxBytes) {
+        PicassoRegistry.setDiskCache(directory, maxBytes);
+    }
+
+    /**
+     * Be told how many bytes AutoPicasso releases each time the system asks the app to trim memory.
+     * Only the memory cache shared by the instances AutoPicasso creates is trimmed. It is also the
+     * default instance's, unless the app set up or used that instance before the first load.
+     */
+    public static void setTrimListener(TrimListener listener) {
+        PicassoTrim.setListener(listener);
+    }
+
+    /**
+     * Release memory as if the system had asked to trim at the given {@code ComponentCallbacks2}
+     * level. This happens automatically on API 14+. Main thread only.
+     *
+     * @return the bytes of bitmap released.
+     * @throws IllegalStateException if called off the main thread.
+     */
+    public static long trimMemory(int level) {
+        return PicassoTrim.onTrimMemory(level);
+    }
+
+    /** Set the maximum number of prefetches in flight at once. Defaults to 1. */
+    public static void setPrefetchLimit(int limit) {
+        PicassoPrefetcher.setLimit(limit);
+    }
+
+    /** Drop pending prefetches and cancel the ones in flight. Main thread only. */
+    public static void cancelPrefetch() {
+        PicassoPrefetcher.cancel();
+    }
+
+    /**
+     * Collect per-class load metrics for {@link #getMetrics(Class)}. Off by default, in which case
+     * generated bindings do no extra work.
+     */
+    public static void setMetricsEnabled(boolean enabled) {
+        PicassoMetrics.setEnabled(enabled);
+    }
+
+    /** Receive an event for every finished request of a generated binding. */
+    public static void setLoadListener(LoadListener listener) {
+        PicassoMetrics.setListener(listener);
+    }
+
+    /**
+     * @return latency percentiles, cache hit rates and average decoded size of the loads of the
+     * given target class, or {@code null} if none were tracked.
+     */
+    public static LoadMetrics getMetrics(Class<?> targetClass) {
+        return PicassoMetrics.snapshot(targetClass);
+    }
+
+    /**
+     * Bind the {@code @Picasso} fields of a list item's view holder. Call this from the adapter's
+     * {@code getView} or {@code onBindViewHolder}.
+     * <br>
+     * Sources are matched to the holder's annotated fields in declaration order, starting with the
+     * fields of its superclasses, and may each be a {@link String} url, {@link android.net.Uri},
+     * {@link java.io.File} or drawable resource {@link Integer}. A missing or {@code null} source
+     * falls back to the annotation's url or drawable. Any request still in flight for a recycled
+     * view is cancelled before the new one is started, and every request is tagged with the view's
+     * Context so that {@link PauseOnScrollListener} can pause them while the list is flinging.
+     */
+    public static void bind(Object holder, Object... sources) {
+        Class<?> targetClass = holder.getClass();
         try {
             if (debug) Log.d(TAG, "Looking up view binder for " + targetClass.getName());
-            PicassoLoader loader = findViewBinderForClass(targetClass);
-            loader.load(activity, transformations);
+            //noinspection unchecked
+            PicassoBinder<Object> binder =
+                    (PicassoBinder<Object>) findViewBinderForClass(targetClass);
+            binder.bind(holder, sources);
         } catch (Exception e) {
             throw new RuntimeException("Unable to bind views for " + targetClass.getName(), e);
         }
     }
 
+    /**
+     * Pause every request started for the given Activity's bindings, including those of its
+     * Fragments and list items. On API 14+ this happens automatically when the Activity is stopped.
+     */
+    public static void pause(Activity activity) {
+        PicassoRegistry.pause(activity);
+    }
+
+    /**
+     * Resume the requests paused by {@link #pause(Activity)}. On API 14+ this happens automatically
+     * when the Activity is started.
+     */
+    public static void resume(Activity activity) {
+        PicassoRegistry.resume(activity);
+    }
+
+    /**
+     * Cancel every request started for the given Activity's bindings. On API 14+ this happens
+     * automatically when the Activity is destroyed. Bindings with an explicit {@code tag} are left
+     * alone, since they are tagged with it instead.
+     */
+    public static void cancel(Activity activity) {
+        PicassoRegistry.cancel(activity);
+    }
+
+    /**
+     * Release the Picasso instance shared by the given Activity's bindings. On API 14+ this happens
+     * automatically when the Activity is destroyed, so this is only needed on older devices.
+     */
+    public static void release(Activity activity) {
+        PicassoRegistry.release(activity);
+    }
+
+    /** Package-private for the lookup benchmarks. */
+    @NonNull
+    static Object findViewBinderForClass(Class<?> cls)
+            throws IllegalAccessException, InstantiationException {
+        Object picassoLoader = LOADERS.get(cls);
+        if (picassoLoader != null) {
+            int hits = HITS.incrementAndGet();
+            if (debug) Log.d(TAG, "HIT: Cached in view binder map. (hits=" + hits
+                    + ", misses=" + MISSES.get() + ")");
+            return picassoLoader;
+        }
+        synchronized (LOADER_LOCK) {
+            //another thread may have resolved it while we were waiting
+            picassoLoader = LOADERS.get(cls);
+            if (picassoLoader == null) {
+                int misses = MISSES.incrementAndGet();
+                if (debug) Log.d(TAG, "MISS: Resolving view binder. (hits=" + HITS.get()
+                        + ", misses=" + misses + ")");
+                picassoLoader = resolveViewBinderForClass(cls);
+            }
+            return picassoLoader;
+        }
+    }
+
+    /**
+     * Must be called with {@link #LOADER_LOCK} held. The indices are searched for the class and all
+     * of its superclasses first, since a subclass without bindings of its own is never indexed, and
+     * reflection is only used when none of them is.
+     */
     @NonNull
-    private static PicassoLoader findViewBinderForClass(Class<?> cls)
+    private static Object resolveViewBinderForClass(Class<?> cls)
             throws IllegalAccessException, InstantiationException {
-        PicassoLoader picassoLoader = LOADERS.get(cls);
+        Class<?> type = cls;
+        while (type != null && !isFrameworkClass(type)) {
+            Object picassoLoader = LOADERS.get(type);
+            if (picassoLoader == null) {
+                picassoLoader = findInIndex(type.getName());
+                if (picassoLoader != null && debug) Log.d(TAG, "HIT: Found in loader index.");
+            }
+            if (picassoLoader != null) {
+                //cache the subclasses too, so that the next lookup is a single hit.
+                for (Class<?> sub = cls; sub != type; sub = sub.getSuperclass()) {
+                    LOADERS.put(sub, picassoLoader);
+                }
+                LOADERS.put(type, picassoLoader);
+                return picassoLoader;
+            }
+            type = type.getSuperclass();
+        }
+        return reflectViewBinderForClass(cls);
+    }
+
+    /** Must be called with {@link #LOADER_LOCK} held. */
+    @NonNull
+    private static Object reflectViewBinderForClass(Class<?> cls)
+            throws IllegalAccessException, InstantiationException {
+        Object picassoLoader = LOADERS.get(cls);
         if (picassoLoader != null) {
-            if (debug) Log.d(TAG, "HIT: Cached in view binder map.");
             return picassoLoader;
         }
         String clsName = cls.getName();
-        if (clsName.startsWith("android.") || clsName.startsWith("java.")) {
+        if (isFrameworkClass(cls)) {
             if (debug) Log.d(TAG, "MISS: Reached framework class. Abandoning search.");
             return NOP_LOADER;
         }
         try {
             Class<?> viewBindingClass = Class.forName(clsName + "$$AutoPicasso");
-            //noinspection unchecked
-            picassoLoader = (PicassoLoader) viewBindingClass.newInstance();
+            picassoLoader = viewBindingClass.newInstance();
             if (debug) Log.d(TAG, "HIT: Loaded view binder class.");
         } catch (ClassNotFoundException e) {
             if (debug) Log.d(TAG, "Not found. Trying superclass " + cls.getSuperclass().getName());
-            picassoLoader = findViewBinderForClass(cls.getSuperclass());
+            picassoLoader = reflectViewBinderForClass(cls.getSuperclass());
         }
         LOADERS.put(cls, picassoLoader);
         return picassoLoader;
     }
 
+    private static boolean isFrameworkClass(Class<?> cls) {
+        String clsName = cls.getName();
+        return clsName.startsWith("android.") || clsName.startsWith("java.");
+    }
+
+    /** Must be called with {@link #LOADER_LOCK} held. */
+    private static Object findInIndex(String clsName) {
+        if (!defaultIndexLoaded) {
+            defaultIndexLoaded = true;
+            loadDefaultIndex();
+        }
+        for (PicassoIndex index : INDICES) {
+            Object loader = index.newInstance(clsName);
+            if (loader != null) {
+                return loader;
+            }
+        }
+        return null;
+    }
+
+    private static void loadDefaultIndex() {
+        try {
+            //one lookup for the whole application, rather than one per target class.
+            INDICES.add((PicassoIndex) Class.forName(DEFAULT_INDEX).newInstance());
+            if (debug) Log.d(TAG, "Loaded default loader index.");
+        } catch (ClassNotFoundException e) {
+            if (debug) Log.d(TAG, "No default loader index. Using reflection only.");
+        } catch (IllegalAccessException | InstantiationException e) {
+            Log.w(TAG, "Unable to create default loader index", e);
+        }
+    }
+
+    /** Used for classes without generated code. */
+    private static final class NopLoader implements PicassoLoader<Object>, PicassoBinder<Object> {
+        @Override
+        public void load(Object target, View source, Transformation[] transformations) {
+        }
+
+        @Override
+        public void resolve(Object target, View source) {
+        }
+
+        @Override
+        public void load(Object target, View source, Transformation[] transformations,
+                         PicassoBatch batch) {
+        }
+
+        @Override
+        public void prefetch(Context context) {
+        }
+
+        @Override
+        public void preloadDrawables(Context context) {
+        }
+
+        @Override
+        public void bind(Object holder, Object[] sources) {
+        }
+    }
+
 }
@@ -0,0 +1,53 @@
+package io.github.phdbrown.autopicasso;
+
+import com.squareup.picasso.Picasso;
+
+/**
+ * Describes one finished request of a generated binding. Delivered to {@link LoadListener}.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 9:15 AM Feb 19, 2016
+ */
+public final class LoadEvent {
+
+    /** The Activity or view holder class that declares the binding */
+    public final Class<?> targetClass;
+    /** Name of the annotated field */
+    public final String fieldName;
+    /** ID of the bound view */
+    public final int viewId;
+    /** Whether the image was displayed. If not, the error drawable was. */
+    public final boolean success;
+    /**
+     * Where the image came from. Memory hits are always detected. Disk and network can only be
+     * told apart for instances AutoPicasso creates itself, so this is {@code null} for other
+     * asynchronous loads, and for failures.
+     */
+    public final Picasso.LoadedFrom loadedFrom;
+    /** Time from enqueue to display, in milliseconds */
+    public final long latency;
+    /** Size of the decoded bitmap in bytes, or 0 on failure */
+    public final long byteCount;
+
+    public LoadEvent(Class<?> targetClass, String fieldName, int viewId, boolean success,
+                     Picasso.LoadedFrom loadedFrom, long latency, long byteCount) {
+        this.targetClass = targetClass;
+        this.fieldName = fieldName;
+        this.viewId = viewId;
+        this.success = success;
+        this.loadedFrom = loadedFrom;
+        this.latency = latency;
+        this.byteCount = byteCount;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadEvent{" + targetClass.getSimpleName() + "." + fieldName
+                + ", success=" + success
+                + ", loadedFrom=" + loadedFrom
+                + ", latency=" + latency
+                + ", byteCount=" + byteCount
+                + '}';
+    }
+}
@@ -0,0 +1,13 @@
+package io.github.phdbrown.autopicasso;
+
+/**
+ * Receives an event for every finished request of a generated binding, on the main thread.
+ * Set with {@link AutoPicasso#setLoadListener(LoadListener)}.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 9:15 AM Feb 19, 2016
+ */
+public interface LoadListener {
+    void onLoad(LoadEvent event);
+}
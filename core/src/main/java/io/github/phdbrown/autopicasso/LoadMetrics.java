@@ -0,0 +1,54 @@
+package io.github.phdbrown.autopicasso;
+
+/**
+ * Aggregated snapshot of the loads of one Activity or view holder class, from
+ * {@link AutoPicasso#getMetrics(Class)}. Latency percentiles are taken over the most recent loads.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 9:15 AM Feb 19, 2016
+ */
+public final class LoadMetrics {
+
+    public final Class<?> targetClass;
+    /** Number of finished loads, including failures */
+    public final int count;
+    public final int failures;
+    /** Fraction of successful loads served from the memory cache */
+    public final float memoryHitRate;
+    /** Fraction of successful loads served from the disk cache, where known */
+    public final float diskHitRate;
+    /** Latency percentiles in milliseconds */
+    public final long latencyP50;
+    public final long latencyP90;
+    public final long latencyP99;
+    public final long averageByteCount;
+
+    public LoadMetrics(Class<?> targetClass, int count, int failures, float memoryHitRate,
+                       float diskHitRate, long latencyP50, long latencyP90, long latencyP99,
+                       long averageByteCount) {
+        this.targetClass = targetClass;
+        this.count = count;
+        this.failures = failures;
+        this.memoryHitRate = memoryHitRate;
+        this.diskHitRate = diskHitRate;
+        this.latencyP50 = latencyP50;
+        this.latencyP90 = latencyP90;
+        this.latencyP99 = latencyP99;
+        this.averageByteCount = averageByteCount;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadMetrics{" + targetClass.getSimpleName()
+                + ", count=" + count
+                + ", failures=" + failures
+                + ", memoryHitRate=" + memoryHitRate
+                + ", diskHitRate=" + diskHitRate
+                + ", latencyP50=" + latencyP50
+                + ", latencyP90=" + latencyP90
+                + ", latencyP99=" + latencyP99
+                + ", averageByteCount=" + averageByteCount
+                + '}';
+    }
+}
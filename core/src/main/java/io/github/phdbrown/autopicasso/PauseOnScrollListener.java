@@ -0,0 +1,50 @@
+package io.github.phdbrown.autopicasso;
+
+import android.content.Context;
+import android.widget.AbsListView;
+
+import com.squareup.picasso.Picasso;
+
+import io.github.phdbrown.autopicasso.internal.PicassoRegistry;
+
+/**
+ * Pauses the requests started by {@link AutoPicasso#bind(Object, Object...)} while a list is
+ * flinging, and resumes them once it settles, so that rows which only fly past are never fetched
+ * or decoded. Set it directly on a {@link android.widget.ListView} or {@link
+ * android.widget.GridView}. RecyclerView users can call {@link #setFlinging(boolean)} from their
+ * own scroll listener.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 4:12 PM Feb 10, 2016
+ */
+public class PauseOnScrollListener implements AbsListView.OnScrollListener {
+
+    private final Object tag;
+    private final Picasso picasso;
+
+    /** @param context the Context of the list's views. */
+    public PauseOnScrollListener(Context context) {
+        this.tag = PicassoRegistry.host(context);
+        this.picasso = PicassoRegistry.obtain(context);
+    }
+
+    public void setFlinging(boolean flinging) {
+        if (flinging) {
+            picasso.pauseTag(tag);
+        }
+        else {
+            picasso.resumeTag(tag);
+        }
+    }
+
+    @Override
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+        setFlinging(scrollState == SCROLL_STATE_FLING);
+    }
+
+    @Override
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+                         int totalItemCount) {
+    }
+}
@@ -0,0 +1,17 @@
+package io.github.phdbrown.autopicasso;
+
+/**
+ * Told how much memory AutoPicasso released each time the system asked the app to trim memory.
+ * Set with {@link AutoPicasso#setTrimListener(TrimListener)}.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 3:20 PM Feb 22, 2016
+ */
+public interface TrimListener {
+    /**
+     * @param level         the {@code ComponentCallbacks2} trim level.
+     * @param releasedBytes bytes of bitmap evicted from the memory cache and the drawable cache.
+     */
+    void onTrimMemory(int level, long releasedBytes);
+}
@@ -0,0 +1,331 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Size-bounded disk cache of downloaded images, evicted least recently used first. Each entry is
+ * one file named after the MD5 digest of its key, as in OkHttp's cache, so that two keys never
+ * share an entry. The entries and their order are kept in a compact index file, 24 bytes per
+ * entry, which is memory-mapped when the cache is opened, so that a cold start knows what is
+ * cached without listing the directory. The index is rewritten every few changes and on
+ * {@link #flush()}. If the process dies in between, a marker file makes the next open rebuild the
+ * index from the directory once instead. Thread safe, and free of Android dependencies.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 10:05 AM Feb 23, 2016
+ */
+public final class DiskLruCache {
+
+    static final String INDEX = "index";
+    static final String DIRTY = "index.dirty";
+
+    private static final int MAGIC = 0x41504443;
+    private static final int VERSION = 2;
+    /** Magic, version and entry count */
+    private static final int HEADER_SIZE = 12;
+    private static final int DIGEST_SIZE = 16;
+    /** Key digest and file size */
+    private static final int ENTRY_SIZE = DIGEST_SIZE + 8;
+    /** Length of the file names of version 1 entries, named after a 64-bit hash */
+    private static final int LEGACY_NAME_LENGTH = 16;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    /** Changes between index writes */
+    private static final int FLUSH_INTERVAL = 32;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final long maxSize;
+    /** File sizes by file name. Access-ordered, so the least recently used entry comes first */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(0, 0.75f, true);
+
+    private long size;
+    private boolean opened;
+    private boolean dirty;
+    private int changes;
+
+    public DiskLruCache(File directory, long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be positive.");
+        }
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the cached entry for the key, or {@code null}. It is opened before an eviction can
+     * delete it, and stays readable if it is evicted while open.
+     */
+    public synchronized FileInputStream get(String key) throws IOException {
+        open();
+        String name = toFileName(key);
+        if (entries.get(name) == null) {
+            return null;
+        }
+        try {
+            return new FileInputStream(new File(directory, name));
+        } catch (FileNotFoundException e) {
+            //deleted behind our back.
+            size -= entries.remove(name);
+            markDirty();
+            return null;
+        }
+    }
+
+    /** @return a new file to write an entry to, for {@link #commit} or {@link #abort}. */
+    public File create(String key) throws IOException {
+        synchronized (this) {
+            open();
+        }
+        return File.createTempFile(toFileName(key) + ".", TEMP_SUFFIX, directory);
+    }
+
+    /** Make the written file the entry for the key, evicting older entries to stay in budget. */
+    public synchronized void commit(String key, File temp) throws IOException {
+        open();
+        String name = toFileName(key);
+        long length = temp.length();
+        if (length > maxSize) {
+            abort(temp);
+            return;
+        }
+        File file = new File(directory, name);
+        if (!temp.renameTo(file)) {
+            abort(temp);
+            throw new IOException("Unable to commit " + file);
+        }
+        Long previous = entries.put(name, length);
+        if (previous != null) {
+            size -= previous;
+        }
+        size += length;
+        trimToSize(maxSize);
+        markDirty();
+    }
+
+    public void abort(File temp) {
+        //noinspection ResultOfMethodCallIgnored
+        temp.delete();
+    }
+
+    public synchronized boolean remove(String key) throws IOException {
+        open();
+        String name = toFileName(key);
+        Long length = entries.remove(name);
+        if (length == null) {
+            return false;
+        }
+        size -= length;
+        delete(new File(directory, name));
+        markDirty();
+        return true;
+    }
+
+    /** @return the bytes held by the cache. */
+    public synchronized long size() throws IOException {
+        open();
+        return size;
+    }
+
+    public long maxSize() {
+        return maxSize;
+    }
+
+    /** Write the index now, e.g. when the app goes to the background. */
+    public synchronized void flush() throws IOException {
+        if (!opened || !dirty) {
+            return;
+        }
+        File temp = new File(directory, INDEX + TEMP_SUFFIX);
+        DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                String name = entry.getKey();
+                for (int i = 0; i < name.length(); i += 2) {
+                    out.writeByte(Character.digit(name.charAt(i), 16) << 4
+                            | Character.digit(name.charAt(i + 1), 16));
+                }
+                out.writeLong(entry.getValue());
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(new File(directory, INDEX))) {
+            throw new IOException("Unable to write index in " + directory);
+        }
+        delete(new File(directory, DIRTY));
+        dirty = false;
+        changes = 0;
+    }
+
+    /** Open the cache, if it is not open yet. Every other method calls this first. */
+    public synchronized void open() throws IOException {
+        if (opened) {
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create cache directory " + directory);
+        }
+        boolean rebuilt = false;
+        if (new File(directory, DIRTY).exists() || !readIndex()) {
+            rebuild();
+            rebuilt = true;
+        }
+        opened = true;
+        long before = size;
+        trimToSize(maxSize);
+        if (rebuilt || size != before) {
+            //persist the recovered or trimmed entries right away.
+            dirty = true;
+            flush();
+        }
+    }
+
+    /** @return whether the index was read. */
+    private boolean readIndex() throws IOException {
+        File index = new File(directory, INDEX);
+        if (!index.isFile() || index.length() < HEADER_SIZE) {
+            return false;
+        }
+        FileInputStream in = new FileInputStream(index);
+        try {
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int count = buffer.getInt(8);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || count < 0
+                    || buffer.capacity() != HEADER_SIZE + (long) count * ENTRY_SIZE) {
+                return false;
+            }
+            buffer.position(HEADER_SIZE);
+            byte[] digest = new byte[DIGEST_SIZE];
+            for (int i = 0; i < count; i++) {
+                buffer.get(digest);
+                long length = buffer.getLong();
+                entries.put(toHex(digest), length);
+                size += length;
+            }
+            return true;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Recover the entries from the directory, oldest first, and drop unfinished writes and the
+     * entries of version 1, which cannot be told apart on a hash collision.
+     */
+    private void rebuild() throws IOException {
+        entries.clear();
+        size = 0;
+        File[] files = directory.listFiles();
+        List<File> cached = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(TEMP_SUFFIX)
+                        || (name.length() == LEGACY_NAME_LENGTH && isHex(name))) {
+                    delete(file);
+                }
+                else if (isEntryName(name)) {
+                    cached.add(file);
+                }
+            }
+        }
+        Collections.sort(cached, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : l == r ? 0 : 1;
+            }
+        });
+        for (File file : cached) {
+            long length = file.length();
+            entries.put(file.getName(), length);
+            size += length;
+        }
+    }
+
+    private void trimToSize(long maxSize) {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            size -= eldest.getValue();
+            delete(new File(directory, eldest.getKey()));
+            iterator.remove();
+        }
+    }
+
+    private void markDirty() throws IOException {
+        if (!dirty) {
+            //one small write per flush interval, so a crash before the next index write is noticed.
+            File marker = new File(directory, DIRTY);
+            if (!marker.exists() && !marker.createNewFile()) {
+                throw new IOException("Unable to write " + marker);
+            }
+            dirty = true;
+        }
+        if (++changes >= FLUSH_INTERVAL) {
+            flush();
+        }
+    }
+
+    /** @return the hex MD5 digest of the key. */
+    static String toFileName(String key) {
+        try {
+            return toHex(MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8")));
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            //every Java platform has MD5 and UTF-8.
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    private static boolean isEntryName(String name) {
+        return name.length() == 2 * DIGEST_SIZE && isHex(name);
+    }
+
+    private static boolean isHex(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.digit(name.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void delete(File file) {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
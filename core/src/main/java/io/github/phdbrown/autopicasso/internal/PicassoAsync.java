@@ -0,0 +1,103 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.app.Activity;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+
+import com.squareup.picasso.Transformation;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import io.github.phdbrown.autopicasso.AsyncMetrics;
+
+/**
+ * Runs generated loads in three steps: the views are found on the main thread, the requests are
+ * built on a background thread, and then one main thread message starts the whole batch. Loads run
+ * one at a time, in the order they were asked for. Also counts the main thread time each step
+ * takes.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 9:30 AM Feb 22, 2016
+ */
+public final class PicassoAsync {
+
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+    private static final ExecutorService EXECUTOR =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    //default priority, since the first frame's images wait on it.
+                    return new Thread(runnable, "AutoPicasso-Async");
+                }
+            });
+
+    private static final Object LOCK = new Object();
+
+    private static int loads;
+    private static long resolveNanos;
+    private static long prepareNanos;
+    private static long commitNanos;
+
+    private PicassoAsync() {
+        //no instance
+    }
+
+    /** Main thread only. */
+    public static <T> void load(final PicassoLoader<T> loader, final T target, final View source,
+                                final Transformation[] transformations) {
+        long start = System.nanoTime();
+        loader.resolve(target, source);
+        final long resolved = System.nanoTime() - start;
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                final PicassoBatch batch = new PicassoBatch();
+                loader.load(target, source, transformations, batch);
+                final long prepared = System.nanoTime() - start;
+                MAIN.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        //the screen may have gone while the requests were built, or been recreated.
+                        Activity host = PicassoRegistry.findActivity(source.getContext());
+                        if (host != null && (host.isFinishing()
+                                || PicassoRegistry.isDestroyed(host))) {
+                            return;
+                        }
+                        long start = System.nanoTime();
+                        batch.submit();
+                        record(resolved, prepared, System.nanoTime() - start);
+                    }
+                });
+            }
+        });
+    }
+
+    public static AsyncMetrics snapshot() {
+        synchronized (LOCK) {
+            return new AsyncMetrics(loads, resolveNanos, prepareNanos, commitNanos);
+        }
+    }
+
+    public static void reset() {
+        synchronized (LOCK) {
+            loads = 0;
+            resolveNanos = 0;
+            prepareNanos = 0;
+            commitNanos = 0;
+        }
+    }
+
+    private static void record(long resolve, long prepare, long commit) {
+        synchronized (LOCK) {
+            loads++;
+            resolveNanos += resolve;
+            prepareNanos += prepare;
+            commitNanos += commit;
+        }
+    }
+}
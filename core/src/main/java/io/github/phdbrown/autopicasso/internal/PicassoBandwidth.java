@@ -0,0 +1,113 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * Estimates the connection's throughput from the network loads of AutoPicasso's own downloader, and
+ * sorts it into a tier. Generated loaders fill in {@code @Picasso.adaptiveUrl} for the tier, and
+ * the downloader reads from the disk cache before the network while the connection is slow. Nothing
+ * is measured until adaptive loading is enabled, and until then every load uses the fast tier.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 2:10 PM Feb 19, 2016
+ */
+public final class PicassoBandwidth {
+
+    public static final int TIER_SLOW = 0;
+    public static final int TIER_MEDIUM = 1;
+    public static final int TIER_FAST = 2;
+
+    private static final String TAG = "AutoPicasso";
+
+    /** Below 150 kbps, in bytes per second */
+    private static final double SLOW_BELOW = 150 * 1024 / 8;
+    /** Above 2 Mbps, in bytes per second */
+    private static final double FAST_ABOVE = 2000 * 1024 / 8;
+    /** Smaller responses take about as long as the round trip, whatever the bandwidth */
+    private static final long MIN_SAMPLE_BYTES = 8 * 1024;
+    /** Weight of each new sample, so the estimate follows a change of connection in a few loads */
+    private static final double WEIGHT = 0.3;
+
+    /** Fraction of the view's width requested in each tier */
+    private static final float[] WIDTH = {0.5f, 0.75f, 1f};
+    /** Image quality requested in each tier */
+    private static final int[] QUALITY = {50, 70, 90};
+
+    private static final Object LOCK = new Object();
+
+    private static volatile boolean enabled;
+    private static volatile int tier = TIER_FAST;
+    /** Bytes per second, or {@code 0} before the first sample */
+    private static double estimate;
+
+    private PicassoBandwidth() {
+        //no instance
+    }
+
+    /**
+     * Start measuring. The default Picasso instance is set up right away with AutoPicasso's
+     * downloader, which wraps the downloader Picasso would have picked, so an app with OkHttp keeps
+     * it. If the default instance was already set or used, e.g. by a load before this call, only
+     * the instances AutoPicasso creates for listener Activities are measured.
+     */
+    public static void enable(Context context) {
+        if (enabled) {
+            return;
+        }
+        enabled = true;
+        if (!PicassoRegistry.installSingleton(context)) {
+            Log.w(TAG, "Default Picasso instance already set. Its loads are not measured.");
+        }
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** @return the tier of the current estimate. */
+    public static int getTier() {
+        return tier;
+    }
+
+    /** @return the estimated throughput in bytes per second, or {@code 0} before any sample. */
+    public static long getEstimate() {
+        synchronized (LOCK) {
+            return (long) estimate;
+        }
+    }
+
+    /** Whether to try the disk cache before the network, accepting any cached response. */
+    static boolean isCacheFirst() {
+        return enabled && tier == TIER_SLOW;
+    }
+
+    /** Record a network load of the given size, from request to the last byte read. */
+    static void record(long bytes, long millis) {
+        if (!enabled || bytes < MIN_SAMPLE_BYTES || millis <= 0) {
+            return;
+        }
+        double sample = bytes * 1000d / millis;
+        synchronized (LOCK) {
+            estimate = estimate == 0 ? sample : estimate + WEIGHT * (sample - estimate);
+            tier = estimate < SLOW_BELOW ? TIER_SLOW
+                    : estimate > FAST_ABOVE ? TIER_FAST : TIER_MEDIUM;
+        }
+    }
+
+    /**
+     * Called by generated code for adaptive bindings.
+     *
+     * @param width the width the image is decoded to in px, or {@code 0} to use the screen's width.
+     * @return the template with {@code {width}} and {@code {quality}} filled in for the tier.
+     */
+    public static String url(Context context, String template, int width) {
+        if (width <= 0) {
+            width = context.getResources().getDisplayMetrics().widthPixels;
+        }
+        int current = tier;
+        return template.replace("{width}", String.valueOf(Math.round(width * WIDTH[current])))
+                .replace("{quality}", String.valueOf(QUALITY[current]));
+    }
+}
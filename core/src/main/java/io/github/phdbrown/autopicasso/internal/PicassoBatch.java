@@ -0,0 +1,535 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.ImageView;
+
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+import com.squareup.picasso.Transformation;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Collects the requests of one generated load and dispatches them together, in priority order.
+ * Requests with the same key, whether in the same batch or still in flight from an earlier one, are
+ * fetched once and every view then takes the decoded bitmap from the memory cache. Requests can be
+ * added on any thread, but the batch must be submitted on the main thread.
+ * <br>
+ * Requests at the default {@link Picasso.Priority#NORMAL} priority are scheduled by visibility:
+ * those whose views are on screen when the batch starts go first, at {@link Picasso.Priority#HIGH}.
+ * The rest show their placeholder, and are held back until those finish, then follow at
+ * {@link Picasso.Priority#LOW}. Scrolling anywhere in the window starts a held request early, at
+ * {@link Picasso.Priority#HIGH}, once its view comes on screen. A request that started is never
+ * restarted, since Picasso would throw away what it already downloaded.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 11:20 AM Feb 17, 2016
+ */
+public final class PicassoBatch implements ViewTreeObserver.OnScrollChangedListener {
+
+    private static final Comparator<Member> BY_PRIORITY = new Comparator<Member>() {
+        @Override
+        public int compare(Member lhs, Member rhs) {
+            return rhs.priority.ordinal() - lhs.priority.ordinal();
+        }
+    };
+
+    /** Shared fetches by key */
+    private static final Map<String, Group> IN_FLIGHT = new HashMap<>();
+    /** Latest request waiting on a shared fetch for each view, so a newer request always wins */
+    private static final Map<ImageView, Member> WAITING = new WeakHashMap<>();
+    /**
+     * Latest request dispatched for each view, so that a stale one is never started again. Weak
+     * both ways, since a request's tag and Picasso instance lead back to the view's window.
+     */
+    private static final Map<ImageView, WeakReference<Member>> LATEST = new WeakHashMap<>();
+
+    /** Created on first use, on the main thread. */
+    private static Handler main;
+    /** Scratch rect for visibility checks. Main thread only. */
+    private static Rect visible;
+
+    private final List<Member> members = new ArrayList<>();
+    /** Scheduled requests started on their own that have not finished yet. Main thread only. */
+    private final List<Member> running = new ArrayList<>();
+    /** Scheduled requests not started yet, since their view was off screen. Main thread only. */
+    private final List<Member> held = new ArrayList<>();
+    private WeakReference<ImageView> scrollAnchor;
+    private boolean rescheduling;
+
+    /**
+     * @param source  the image source, or {@code null}.
+     * @param options every request option that changes the decoded image, as generated.
+     * @return the key requests are coalesced by, or {@code null} if the source is {@code null}.
+     */
+    public static String key(Object source, String options, Transformation[] transformations) {
+        if (source == null) {
+            return null;
+        }
+        return key(String.valueOf(source) + '\n' + options, transformations);
+    }
+
+    /**
+     * @param base the source and options, precomputed for bindings whose source is a constant.
+     * @return the key requests are coalesced by. Without transformations this is the base itself.
+     */
+    public static String key(String base, Transformation[] transformations) {
+        if (transformations.length == 0) {
+            return base;
+        }
+        StringBuilder builder = new StringBuilder(base);
+        for (Transformation transformation : transformations) {
+            builder.append('\n').append(transformation.key());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param factory     builds the request without a priority, since Picasso only lets it be set
+     *                    once. It is called once, when the request is first needed, which for a
+     *                    held request is when it starts.
+     * @param key         from {@link #key}, or {@code null} if the request must never be coalesced,
+     *                    e.g. because it uses {@code fit()} or skips the memory cache.
+     * @param tag         the tag already set on the request.
+     * @param priority    the annotation's priority. {@link Picasso.Priority#NORMAL} follows
+     *                    visibility.
+     * @param placeholder shown while a coalesced request waits for its shared fetch, or {@code
+     *                    null}.
+     * @param callback    may be {@code null}.
+     */
+    public void add(Picasso picasso, Factory factory, ImageView view, String key, Object tag,
+                    Picasso.Priority priority, Drawable placeholder, Callback callback) {
+        members.add(new Member(picasso, factory, view, key, tag, priority, placeholder, callback));
+    }
+
+    /**
+     * Forget the shared fetches started for requests with the given tag, once
+     * {@link Picasso#cancelTag(Object)} has cancelled them, since their callbacks will never run.
+     * Requests with another tag that were waiting on one of them are started on their own.
+     */
+    public static void cancel(Object tag) {
+        List<Group> cancelled = new ArrayList<>();
+        for (Group group : IN_FLIGHT.values()) {
+            if (tag.equals(group.tag)) {
+                cancelled.add(group);
+            }
+        }
+        for (Group group : cancelled) {
+            IN_FLIGHT.remove(group.key);
+            for (Member member : group.members) {
+                ImageView view = member.view.get();
+                if (view != null && WAITING.get(view) == member) {
+                    WAITING.remove(view);
+                    if (!tag.equals(member.tag)) {
+                        PicassoMetrics.into(member.creator(), view, member.callback);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Start the batch. Until its views have been laid out nobody can tell which of them are on
+     * screen, so if one that is not gone never was, it asks for a layout and waits for the first
+     * pre-draw, which is still before that frame is drawn.
+     */
+    public void submit() {
+        final ImageView anchor = findLayoutAnchor();
+        if (anchor != null) {
+            ViewTreeObserver observer = anchor.getViewTreeObserver();
+            observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+                @Override
+                public boolean onPreDraw() {
+                    ViewTreeObserver observer = anchor.getViewTreeObserver();
+                    if (observer.isAlive()) {
+                        observer.removeOnPreDrawListener(this);
+                    }
+                    dispatch();
+                    return true;
+                }
+            });
+            //a pre-draw listener alone does not schedule a traversal of an idle window.
+            anchor.requestLayout();
+            return;
+        }
+        dispatch();
+    }
+
+    /** @return a view that was never laid out, and is not gone, or {@code null}. */
+    private ImageView findLayoutAnchor() {
+        for (Member member : members) {
+            ImageView view = member.view.get();
+            if (view != null && member.scheduled && view.getVisibility() != View.GONE
+                    && !isLaidOut(view)) {
+                return view;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isLaidOut(View view) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return view.isLaidOut();
+        }
+        //a view keeps its first layout request until it is laid out, and keeps its size after.
+        return !view.isLayoutRequested() || view.getWidth() > 0 || view.getHeight() > 0;
+    }
+
+    private void dispatch() {
+        for (Member member : members) {
+            if (member.scheduled) {
+                member.updatePriority();
+            }
+        }
+        //stable, so requests of equal priority keep their declaration order.
+        Collections.sort(members, BY_PRIORITY);
+        Map<String, Integer> counts = new HashMap<>();
+        for (Member member : members) {
+            if (member.key != null) {
+                Integer count = counts.get(member.key);
+                counts.put(member.key, count == null ? 1 : count + 1);
+            }
+        }
+        //join every group before any fetch starts, since a cached fetch completes synchronously.
+        List<Group> started = new ArrayList<>();
+        for (Member member : members) {
+            if (member.key == null) {
+                continue;
+            }
+            Group group = IN_FLIGHT.get(member.key);
+            if (group == null) {
+                if (counts.get(member.key) == 1) {
+                    continue;
+                }
+                group = new Group(member.key, member.tag, member.creator());
+                IN_FLIGHT.put(member.key, group);
+                started.add(group);
+            }
+            group.join(member);
+        }
+        List<Member> replaced = new ArrayList<>();
+        for (Member member : members) {
+            ImageView target = member.view.get();
+            if (target != null) {
+                WeakReference<Member> previous = LATEST.put(target, new WeakReference<>(member));
+                Member stale = previous == null ? null : previous.get();
+                if (stale != null && stale.batch != null) {
+                    replaced.add(stale);
+                }
+            }
+        }
+        for (Member stale : replaced) {
+            stale.batch.forget(stale);
+        }
+        List<Member> offscreen = new ArrayList<>();
+        for (Member member : members) {
+            if (member.group == null) {
+                ImageView view = member.view.get();
+                if (view != null) {
+                    WAITING.remove(view);
+                    if (!member.scheduled) {
+                        PicassoMetrics.into(member.creator(), view, member.callback);
+                    }
+                    else if (member.priority == Picasso.Priority.HIGH) {
+                        start(member, view);
+                    }
+                    else {
+                        offscreen.add(member);
+                    }
+                }
+            }
+            else if (started.contains(member.group) && member.group.creator == member.creator) {
+                PicassoMetrics.fetch(member.group.creator, member.group);
+            }
+        }
+        members.clear();
+        //with nothing on screen to wait for, the rest start right away.
+        boolean hold = !running.isEmpty();
+        for (Member member : offscreen) {
+            ImageView view = member.view.get();
+            if (view == null) {
+                continue;
+            }
+            if (hold) {
+                hold(member, view);
+            }
+            else {
+                start(member, view);
+            }
+        }
+        if (!held.isEmpty()) {
+            watchScrolling();
+        }
+    }
+
+    private void start(Member member, ImageView view) {
+        member.batch = this;
+        running.add(member);
+        PicassoMetrics.into(member.creator(), view, new Pending(member));
+    }
+
+    /** Show the placeholder, as into() would, without starting the request. */
+    private void hold(Member member, ImageView view) {
+        member.batch = this;
+        held.add(member);
+        member.picasso.cancelRequest(view);
+        view.setImageDrawable(member.placeholder);
+    }
+
+    /** Start every held request, at its low priority, once no other request is left loading. */
+    private void startHeldIfIdle() {
+        if (running.isEmpty() && !held.isEmpty()) {
+            List<Member> release = new ArrayList<>(held);
+            held.clear();
+            for (Member member : release) {
+                ImageView view = member.view.get();
+                if (view != null && isLatest(view, member)) {
+                    start(member, view);
+                }
+            }
+        }
+        if (held.isEmpty()) {
+            stopWatchingScrolling();
+        }
+    }
+
+    /** Stop waiting for a request once a newer one was dispatched for its view. */
+    private void forget(Member member) {
+        running.remove(member);
+        held.remove(member);
+        member.batch = null;
+        startHeldIfIdle();
+    }
+
+    /** Follow scrolling anywhere in the window while requests of this batch are still held. */
+    private void watchScrolling() {
+        for (Member member : held) {
+            ImageView view = member.view.get();
+            if (view != null) {
+                scrollAnchor = new WeakReference<>(view);
+                view.getViewTreeObserver().addOnScrollChangedListener(this);
+                return;
+            }
+        }
+    }
+
+    private void stopWatchingScrolling() {
+        ImageView view = scrollAnchor == null ? null : scrollAnchor.get();
+        scrollAnchor = null;
+        if (view != null && view.getViewTreeObserver().isAlive()) {
+            view.getViewTreeObserver().removeOnScrollChangedListener(this);
+        }
+    }
+
+    @Override
+    public void onScrollChanged() {
+        //scroll events come many times a frame. Look once, after they settle into the next frame.
+        if (!rescheduling) {
+            rescheduling = true;
+            if (main == null) {
+                main = new Handler(Looper.getMainLooper());
+            }
+            main.post(RESCHEDULE);
+        }
+    }
+
+    private final Runnable RESCHEDULE = new Runnable() {
+        @Override
+        public void run() {
+            rescheduling = false;
+            reschedule();
+        }
+    };
+
+    /**
+     * Start the held requests whose view came on screen, ahead of the rest. Requests that already
+     * started are left alone. Main thread only.
+     */
+    void reschedule() {
+        for (Member member : new ArrayList<>(held)) {
+            ImageView view = member.view.get();
+            if (view == null || !isLatest(view, member)) {
+                //gone, or bound to a newer request since.
+                held.remove(member);
+            }
+            else if (member.updatePriority()) {
+                held.remove(member);
+                start(member, view);
+            }
+        }
+        startHeldIfIdle();
+    }
+
+    private static boolean isLatest(ImageView view, Member member) {
+        WeakReference<Member> latest = LATEST.get(view);
+        return latest != null && latest.get() == member;
+    }
+
+    /** Builds the request of one binding. */
+    public interface Factory {
+        /** @return a new request, without a priority. */
+        RequestCreator create();
+    }
+
+    /** Starts the held requests once the running ones finished. */
+    private final class Pending implements Callback {
+        private final Member member;
+
+        Pending(Member member) {
+            this.member = member;
+        }
+
+        @Override
+        public void onSuccess() {
+            finished();
+            if (member.callback != null) {
+                member.callback.onSuccess();
+            }
+        }
+
+        @Override
+        public void onError() {
+            finished();
+            if (member.callback != null) {
+                member.callback.onError();
+            }
+        }
+
+        private void finished() {
+            running.remove(member);
+            member.batch = null;
+            ImageView view = member.view.get();
+            if (view != null && isLatest(view, member)) {
+                LATEST.remove(view);
+            }
+            startHeldIfIdle();
+        }
+    }
+
+    private static final class Member {
+        final Picasso picasso;
+        final Factory factory;
+        /** Built on first use, once the priority is known. Main thread only once submitted */
+        RequestCreator creator;
+        /** Weak, like Picasso's own reference, so that a pending fetch does not leak the view */
+        final WeakReference<ImageView> view;
+        final String key;
+        final Object tag;
+        /** Whether the priority follows the view's visibility, rather than the annotation */
+        final boolean scheduled;
+        Picasso.Priority priority;
+        final Drawable placeholder;
+        final Callback callback;
+        Group group;
+        /** Batch the request runs or is held in, told when a newer request replaces it */
+        PicassoBatch batch;
+
+        Member(Picasso picasso, Factory factory, ImageView view, String key, Object tag,
+               Picasso.Priority priority, Drawable placeholder, Callback callback) {
+            this.picasso = picasso;
+            this.factory = factory;
+            this.view = new WeakReference<>(view);
+            this.key = key;
+            this.tag = tag;
+            this.priority = priority;
+            this.scheduled = priority == Picasso.Priority.NORMAL;
+            this.placeholder = placeholder;
+            this.callback = callback;
+        }
+
+        RequestCreator creator() {
+            if (creator == null) {
+                creator = factory.create().priority(priority);
+            }
+            return creator;
+        }
+
+        /**
+         * Pick {@link Picasso.Priority#HIGH} while any part of the view is on screen, and
+         * {@link Picasso.Priority#LOW} otherwise. Only a request that was not built yet takes the
+         * new priority, since Picasso only lets it be set once.
+         *
+         * @return whether the priority changed.
+         */
+        boolean updatePriority() {
+            ImageView view = this.view.get();
+            if (visible == null) {
+                visible = new Rect();
+            }
+            boolean shown = view != null && view.isShown() && view.getGlobalVisibleRect(visible);
+            Picasso.Priority priority = shown ? Picasso.Priority.HIGH : Picasso.Priority.LOW;
+            if (priority == this.priority) {
+                return false;
+            }
+            this.priority = priority;
+            return true;
+        }
+    }
+
+    /** One fetch, shared by every request with its key. */
+    private static final class Group implements Callback {
+        final String key;
+        /** Tag of the fetch, which is the request of the first member */
+        final Object tag;
+        final RequestCreator creator;
+        final List<Member> members = new ArrayList<>();
+
+        Group(String key, Object tag, RequestCreator creator) {
+            this.key = key;
+            this.tag = tag;
+            this.creator = creator;
+        }
+
+        void join(Member member) {
+            member.group = this;
+            members.add(member);
+            ImageView view = member.view.get();
+            if (view == null) {
+                return;
+            }
+            //what into() would have done while the image loads.
+            member.picasso.cancelRequest(view);
+            view.setImageDrawable(member.placeholder);
+            WAITING.put(view, member);
+        }
+
+        @Override
+        public void onSuccess() {
+            finish();
+        }
+
+        @Override
+        public void onError() {
+            //each request tries again on its own, and shows its own error drawable.
+            finish();
+        }
+
+        private void finish() {
+            if (IN_FLIGHT.get(key) == this) {
+                IN_FLIGHT.remove(key);
+            }
+            for (Member member : members) {
+                ImageView view = member.view.get();
+                if (view != null && WAITING.get(view) == member) {
+                    WAITING.remove(view);
+                    member.creator().into(view, member.callback);
+                }
+            }
+        }
+    }
+}
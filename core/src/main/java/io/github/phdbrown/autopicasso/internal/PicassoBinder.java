@@ -0,0 +1,12 @@
+package io.github.phdbrown.autopicasso.internal;
+
+/**
+ * Generated Class skeleton for view holders
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 4:12 PM Feb 10, 2016
+ */
+public interface PicassoBinder<T> {
+    void bind(T holder, Object[] sources);
+}
@@ -0,0 +1,67 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+/**
+ * Picks the {@link Bitmap.Config} for bindings that use {@code autoConfig}. Opaque sources never
+ * need an alpha channel, so they always decode as {@link Bitmap.Config#RGB_565}, which halves their
+ * memory. Everything else also uses RGB_565 on low memory devices or while the system reports that
+ * the running app is low on memory, and {@link Bitmap.Config#ARGB_8888} otherwise.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 10:40 AM Feb 17, 2016
+ */
+public final class PicassoConfigs {
+
+    /** Devices at or below this memory class (in MB) are treated as low memory. */
+    private static final int LOW_MEMORY_CLASS = 32;
+
+    private static Boolean lowMemoryDevice;
+    private static volatile boolean trimming;
+
+    private PicassoConfigs() {
+        //no instance
+    }
+
+    /**
+     * @param opaque whether the processor could tell that the source has no alpha channel, such
+     *               as a JPEG url or drawable.
+     */
+    public static Bitmap.Config select(Context context, boolean opaque) {
+        if (opaque || trimming || isLowMemoryDevice(context)) {
+            return Bitmap.Config.RGB_565;
+        }
+        return Bitmap.Config.ARGB_8888;
+    }
+
+    /**
+     * Report memory pressure. Called by {@link PicassoTrim}. Only the running levels from
+     * {@code TRIM_MEMORY_RUNNING_LOW} describe the memory the UI decodes into. A lower level means
+     * it recovered, and the background levels are reported once the UI is hidden, which it only
+     * comes back from through another running level if memory is still low.
+     */
+    public static void onTrimMemory(int level) {
+        trimming = level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+    }
+
+    private static synchronized boolean isLowMemoryDevice(Context context) {
+        if (lowMemoryDevice == null) {
+            Context application = context.getApplicationContext();
+            ActivityManager am =
+                    (ActivityManager) application.getSystemService(Context.ACTIVITY_SERVICE);
+            boolean low = am.getMemoryClass() <= LOW_MEMORY_CLASS;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                low |= am.isLowRamDevice();
+            }
+            PicassoTrim.register(application);
+            lowMemoryDevice = low;
+        }
+        return lowMemoryDevice;
+    }
+}
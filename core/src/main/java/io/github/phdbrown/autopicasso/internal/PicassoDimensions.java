@@ -0,0 +1,21 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.content.Context;
+
+/**
+ * Used by generated code to turn the dp sizes read from layouts into pixels.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 3:05 PM Feb 15, 2016
+ */
+public final class PicassoDimensions {
+
+    private PicassoDimensions() {
+        //no instance
+    }
+
+    public static int dpToPx(Context context, float dp) {
+        return (int) (dp * context.getResources().getDisplayMetrics().density + 0.5f);
+    }
+}
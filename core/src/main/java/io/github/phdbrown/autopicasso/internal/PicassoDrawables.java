@@ -0,0 +1,197 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of the placeholder and error drawables used by generated loaders, keyed by resource
+ * ID and target size. Each resource is decoded once, then every request gets its own drawable from
+ * the cached {@link Drawable.ConstantState}, so views never share bounds or state but do share the
+ * bitmap. Bitmaps much larger than the view they are shown in are downsampled to its size as they
+ * are decoded. Resources depend on the configuration, so the cache is cleared when it changes,
+ * which {@link PicassoTrim} reports on API 14+.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 10:40 AM Feb 19, 2016
+ */
+public final class PicassoDrawables {
+
+    /** Maximum number of cached drawables */
+    private static final int MAX_ENTRIES = 64;
+    /** Maximum bytes of bitmap held by the cache. Larger bitmaps are decoded every time. */
+    private static final int MAX_BYTES = 4 * 1024 * 1024;
+
+    /** Access-ordered, so the least recently used drawable is dropped first */
+    private static final Map<Key, Entry> CACHE = new LinkedHashMap<>(16, 0.75f, true);
+
+    private static int bytes = 0;
+
+    private PicassoDrawables() {
+        //no instance
+    }
+
+    /**
+     * @param width  the width of the view in px, or {@code 0} to keep the drawable's own size.
+     * @param height the height of the view in px, or {@code 0} to keep the drawable's own size.
+     * @return a new drawable for the resource, sharing its bitmap with every other request for it.
+     */
+    public static Drawable get(Context context, int resId, int width, int height) {
+        Resources resources = context.getResources();
+        Key key = new Key(resId, width, height);
+        Drawable.ConstantState state;
+        synchronized (CACHE) {
+            Entry entry = CACHE.get(key);
+            state = entry != null ? entry.state : null;
+        }
+        if (state != null) {
+            return state.newDrawable(resources);
+        }
+        Drawable drawable = decode(resources, resId, width, height);
+        put(key, drawable);
+        return drawable;
+    }
+
+    /** Decode the resource into the cache ahead of time. Safe to call from any thread. */
+    public static void preload(Context context, int resId, int width, int height) {
+        Key key = new Key(resId, width, height);
+        synchronized (CACHE) {
+            if (CACHE.containsKey(key)) {
+                return;
+            }
+        }
+        put(key, decode(context.getResources(), resId, width, height));
+    }
+
+    /**
+     * Drop every cached drawable.
+     *
+     * @return the bytes of bitmap released.
+     */
+    public static int clear() {
+        synchronized (CACHE) {
+            int released = bytes;
+            CACHE.clear();
+            bytes = 0;
+            return released;
+        }
+    }
+
+    /** @return the bytes of bitmap held by the cache. */
+    public static int size() {
+        synchronized (CACHE) {
+            return bytes;
+        }
+    }
+
+    /** Called when the configuration changes, since resources may resolve to other files. */
+    static void onConfigurationChanged() {
+        clear();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Drawable decode(Resources resources, int resId, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return resources.getDrawable(resId);
+        }
+        //read the size first, so that a large bitmap is never decoded at full size.
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resId, options);
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= width
+                && options.outHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        if (sampleSize == 1) {
+            //not a bitmap, or already small enough.
+            return resources.getDrawable(resId);
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap sampled = BitmapFactory.decodeResource(resources, resId, options);
+        if (sampled == null || sampled.getNinePatchChunk() != null) {
+            //nine-patches only stretch correctly at their own size.
+            return resources.getDrawable(resId);
+        }
+        return new BitmapDrawable(resources, sampled);
+    }
+
+    private static void put(Key key, Drawable drawable) {
+        //drawables without a constant state cannot be copied, so they are not cached.
+        Drawable.ConstantState state = drawable.getConstantState();
+        if (state == null) {
+            return;
+        }
+        int size = sizeOf(drawable);
+        if (size > MAX_BYTES) {
+            return;
+        }
+        synchronized (CACHE) {
+            Entry previous = CACHE.put(key, new Entry(state, size));
+            if (previous != null) {
+                bytes -= previous.size;
+            }
+            bytes += size;
+            Iterator<Entry> iterator = CACHE.values().iterator();
+            while ((bytes > MAX_BYTES || CACHE.size() > MAX_ENTRIES) && iterator.hasNext()) {
+                bytes -= iterator.next().size;
+                iterator.remove();
+            }
+        }
+    }
+
+    private static int sizeOf(Drawable drawable) {
+        if (drawable instanceof BitmapDrawable) {
+            Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+            if (bitmap != null) {
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        }
+        return 0;
+    }
+
+    private static final class Entry {
+        final Drawable.ConstantState state;
+        final int size;
+
+        Entry(Drawable.ConstantState state, int size) {
+            this.state = state;
+            this.size = size;
+        }
+    }
+
+    private static final class Key {
+        final int resId;
+        final int width;
+        final int height;
+
+        Key(int resId, int width, int height) {
+            this.resId = resId;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return resId == other.resId && width == other.width && height == other.height;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * resId + width) + height;
+        }
+    }
+}
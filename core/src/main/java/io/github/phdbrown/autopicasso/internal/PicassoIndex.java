@@ -0,0 +1,18 @@
+package io.github.phdbrown.autopicasso.internal;
+
+/**
+ * Generated Class skeleton. The annotation processor writes one implementation per compilation,
+ * mapping each target class name directly to a new instance of its generated
+ * {@link PicassoLoader} or {@link PicassoBinder}.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 2:40 PM Feb 09, 2016
+ */
+public interface PicassoIndex {
+    /**
+     * @param className the binary name of the target class, as returned by {@link Class#getName()}
+     * @return a new loader or binder for the class, or {@code null} if this index has none.
+     */
+    Object newInstance(String className);
+}
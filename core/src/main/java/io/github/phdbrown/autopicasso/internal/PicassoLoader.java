@@ -1,16 +1,31 @@
 package io.github.phdbrown.autopicasso.internal;
 
-import android.app.Activity;
+import android.content.Context;
+import android.view.View;
 
 import com.squareup.picasso.Transformation;
 
 /**
- * Generated Class skeleton
+ * Generated Class skeleton. Binds the {@code @Picasso} fields of a target, such as an Activity,
+ * Fragment, View or view holder, to the views found under its source view.
  * <br>
  *
  * @author Phil Brown
  * @since 9:21 AM Feb 04, 2016
  */
-public interface PicassoLoader {
-    void load(Activity activity, Transformation[] transformations);
+public interface PicassoLoader<T> {
+    /** Find the views, build the requests and start them. Main thread only. */
+    void load(T target, View source, Transformation[] transformations);
+
+    /** Find the target's views under the source, and assign its fields. Main thread only. */
+    void resolve(T target, View source);
+
+    /** Build the requests for the views found by {@link #resolve} into the batch. Any thread. */
+    void load(T target, View source, Transformation[] transformations, PicassoBatch batch);
+
+    /** Warm the caches with this target's images, using the same request options as load. */
+    void prefetch(Context context);
+
+    /** Decode this target's placeholder and error drawables into the shared drawable cache. */
+    void preloadDrawables(Context context);
 }
@@ -0,0 +1,226 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.widget.ImageView;
+
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.github.phdbrown.autopicasso.LoadEvent;
+import io.github.phdbrown.autopicasso.LoadListener;
+import io.github.phdbrown.autopicasso.LoadMetrics;
+
+/**
+ * Collects the load events of generated bindings, and aggregates them per target class.
+ * Nothing is tracked until metrics are enabled or a {@link LoadListener} is set.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 9:15 AM Feb 19, 2016
+ */
+public final class PicassoMetrics {
+
+    /** Number of recent latencies kept per target class for percentiles */
+    private static final int SAMPLES = 256;
+
+    private static final Map<Class<?>, Stats> STATS = new HashMap<>();
+
+    private static volatile boolean enabled;
+    private static volatile LoadListener listener;
+    /** Number of requests being started. Main thread only */
+    private static int starting;
+
+    private PicassoMetrics() {
+        //no instance
+    }
+
+    public static void setEnabled(boolean enabled) {
+        PicassoMetrics.enabled = enabled;
+    }
+
+    public static void setListener(LoadListener listener) {
+        PicassoMetrics.listener = listener;
+    }
+
+    /**
+     * Called by generated code for every request.
+     *
+     * @return the callback to pass to {@code into()}, or {@code null} if nothing is tracked.
+     */
+    public static Callback track(ImageView view, Class<?> target, String field, int id,
+                                 Object source) {
+        if (!enabled && listener == null) {
+            return null;
+        }
+        return new Tracker(view, target, field, id, source);
+    }
+
+    /**
+     * Start a request. Picasso delivers a memory hit from within into(), and everything else in a
+     * later main thread message, so a tracked request that succeeds in here came from memory,
+     * however long it was held before it started.
+     */
+    static void into(RequestCreator creator, ImageView view, Callback callback) {
+        starting++;
+        try {
+            creator.into(view, callback);
+        } finally {
+            starting--;
+        }
+    }
+
+    /**
+     * Start a shared fetch. Its callback starts the requests waiting on it, which only came from
+     * memory if the fetch did.
+     */
+    static void fetch(RequestCreator creator, Callback callback) {
+        starting++;
+        try {
+            creator.fetch(callback);
+        } finally {
+            starting--;
+        }
+    }
+
+    /** @return a snapshot of the given class's loads, or {@code null} if none were tracked. */
+    public static LoadMetrics snapshot(Class<?> target) {
+        synchronized (STATS) {
+            Stats stats = STATS.get(target);
+            return stats == null ? null : stats.snapshot(target);
+        }
+    }
+
+    public static void reset() {
+        synchronized (STATS) {
+            STATS.clear();
+        }
+    }
+
+    private static void record(LoadEvent event) {
+        if (enabled) {
+            synchronized (STATS) {
+                Stats stats = STATS.get(event.targetClass);
+                if (stats == null) {
+                    stats = new Stats();
+                    STATS.put(event.targetClass, stats);
+                }
+                stats.add(event);
+            }
+        }
+        LoadListener listener = PicassoMetrics.listener;
+        if (listener != null) {
+            listener.onLoad(event);
+        }
+    }
+
+    private static final class Tracker implements Callback {
+
+        private final WeakReference<ImageView> view;
+        private final Class<?> target;
+        private final String field;
+        private final int id;
+        private final Object source;
+        private final long start = SystemClock.uptimeMillis();
+
+        Tracker(ImageView view, Class<?> target, String field, int id, Object source) {
+            this.view = new WeakReference<>(view);
+            this.target = target;
+            this.field = field;
+            this.id = id;
+            this.source = source;
+        }
+
+        @Override
+        public void onSuccess() {
+            Picasso.LoadedFrom from = starting > 0 ? Picasso.LoadedFrom.MEMORY : findLoadedFrom();
+            record(new LoadEvent(target, field, id, true, from, SystemClock.uptimeMillis() - start,
+                    getByteCount()));
+        }
+
+        @Override
+        public void onError() {
+            record(new LoadEvent(target, field, id, false, null,
+                    SystemClock.uptimeMillis() - start, 0));
+        }
+
+        private Picasso.LoadedFrom findLoadedFrom() {
+            if (source instanceof Integer || source instanceof File) {
+                return Picasso.LoadedFrom.DISK;
+            }
+            if (source instanceof String || source instanceof Uri) {
+                Boolean cached = TrackingDownloader.takeResult(source.toString());
+                if (cached != null) {
+                    return cached ? Picasso.LoadedFrom.DISK : Picasso.LoadedFrom.NETWORK;
+                }
+            }
+            return null;
+        }
+
+        private long getByteCount() {
+            ImageView imageView = view.get();
+            Drawable drawable = imageView == null ? null : imageView.getDrawable();
+            if (drawable instanceof BitmapDrawable) {
+                Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+                if (bitmap != null) {
+                    return (long) bitmap.getRowBytes() * bitmap.getHeight();
+                }
+            }
+            return 0;
+        }
+    }
+
+    private static final class Stats {
+        private final long[] latencies = new long[SAMPLES];
+        private int count;
+        private int failures;
+        private int memoryHits;
+        private int diskHits;
+        private long bytes;
+
+        void add(LoadEvent event) {
+            latencies[count % SAMPLES] = event.latency;
+            count++;
+            if (!event.success) {
+                failures++;
+                return;
+            }
+            bytes += event.byteCount;
+            if (event.loadedFrom == Picasso.LoadedFrom.MEMORY) {
+                memoryHits++;
+            }
+            else if (event.loadedFrom == Picasso.LoadedFrom.DISK) {
+                diskHits++;
+            }
+        }
+
+        LoadMetrics snapshot(Class<?> target) {
+            long[] sorted = Arrays.copyOf(latencies, Math.min(count, SAMPLES));
+            Arrays.sort(sorted);
+            int successes = count - failures;
+            return new LoadMetrics(target, count, failures,
+                    successes == 0 ? 0 : (float) memoryHits / successes,
+                    successes == 0 ? 0 : (float) diskHits / successes,
+                    percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+                    successes == 0 ? 0 : bytes / successes);
+        }
+
+        private static long percentile(long[] sorted, int percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, index)];
+        }
+    }
+}
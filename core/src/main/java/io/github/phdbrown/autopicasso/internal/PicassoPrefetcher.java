@@ -0,0 +1,119 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+
+/**
+ * Runs the prefetch requests built by generated loaders. Prefetches are always sent at
+ * {@link Picasso.Priority#LOW} and only a limited number are in flight at once, so that Picasso's
+ * workers stay free for the visible loads of the current screen.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 11:30 AM Feb 12, 2016
+ */
+public final class PicassoPrefetcher {
+
+    /** Tag of every prefetch request */
+    public static final Object TAG = new Object();
+
+    /** Default in-flight limit. Picasso has three workers by default, so two are always free. */
+    private static final int DEFAULT_LIMIT = 1;
+
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+    private static final Queue<RequestCreator> PENDING = new ArrayDeque<>();
+    /** Instances that have been sent prefetches, so they can be cancelled. */
+    private static final Map<Picasso, Boolean> INSTANCES = new WeakHashMap<>();
+
+    private static int limit = DEFAULT_LIMIT;
+    private static int running = 0;
+
+    private PicassoPrefetcher() {
+        //no instance
+    }
+
+    /** Set the maximum number of prefetches in flight at once. */
+    public static void setLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException(
+                    "Prefetch limit must be at least 1. Found: " + limit);
+        }
+        synchronized (PENDING) {
+            PicassoPrefetcher.limit = limit;
+        }
+        MAIN.post(NEXT);
+    }
+
+    /** Queue a request built from the given instance. Its priority and tag are replaced. */
+    public static void enqueue(Picasso picasso, RequestCreator creator) {
+        creator.priority(Picasso.Priority.LOW).tag(TAG);
+        synchronized (PENDING) {
+            PENDING.add(creator);
+            INSTANCES.put(picasso, Boolean.TRUE);
+        }
+        MAIN.post(NEXT);
+    }
+
+    /** Drop every prefetch that has not started yet, and cancel the ones in flight. */
+    public static void cancel() {
+        Picasso[] instances;
+        synchronized (PENDING) {
+            PENDING.clear();
+            //cancelled requests never call back
+            running = 0;
+            instances = INSTANCES.keySet().toArray(new Picasso[INSTANCES.size()]);
+            INSTANCES.clear();
+        }
+        for (Picasso picasso : instances) {
+            picasso.cancelTag(TAG);
+        }
+    }
+
+    /** Starts pending requests up to the limit. Picasso requires fetch() on the main thread. */
+    private static final Runnable NEXT = new Runnable() {
+        @Override
+        public void run() {
+            while (true) {
+                RequestCreator creator;
+                synchronized (PENDING) {
+                    if (running >= limit || PENDING.isEmpty()) {
+                        return;
+                    }
+                    creator = PENDING.poll();
+                    running++;
+                }
+                creator.fetch(DONE);
+            }
+        }
+    };
+
+    private static final Callback DONE = new Callback() {
+        @Override
+        public void onSuccess() {
+            finished();
+        }
+
+        @Override
+        public void onError() {
+            finished();
+        }
+
+        private void finished() {
+            synchronized (PENDING) {
+                if (running > 0) {
+                    running--;
+                }
+            }
+            NEXT.run();
+        }
+    };
+}
@@ -0,0 +1,511 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.app.ActivityManager;
+import android.app.Application;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.pm.ApplicationInfo;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Process;
+
+import com.squareup.picasso.Cache;
+import com.squareup.picasso.Picasso;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of the {@link Picasso} instances used by the generated loaders. Activities that
+ * implement {@link Picasso.Listener} need their own instance so that errors are reported back to
+ * them. Rather than building a new instance for every binding, one instance is created per listener
+ * and kept until that Activity is destroyed. All registry instances share a single memory cache,
+ * sized against the application's memory class and trimmed under memory pressure, a single
+ * executor, which runs requests by priority like Picasso's own, and the disk cache, if one was
+ * set. Unless the app set up the default instance itself, the registry sets it up on the same
+ * memory cache, so that every instance stays within the one budget Picasso would use. On API 14+
+ * the requests tagged with an Activity are paused while it is stopped, and cancelled when it is
+ * destroyed.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 10:02 AM Feb 09, 2016
+ */
+public final class PicassoRegistry {
+
+    /** Number of threads used by the shared executor. Matches Picasso's default. */
+    private static final int THREAD_COUNT = 3;
+    /** Fraction of the available heap given to the shared memory cache, as in Picasso. */
+    private static final int HEAP_FRACTION = 7;
+    /**
+     * Fraction of the heap left to the shared cache when the default instance keeps its own cache,
+     * itself a seventh of the heap.
+     */
+    private static final int SEPARATE_HEAP_FRACTION = 2 * HEAP_FRACTION;
+
+    private static final Map<Picasso.Listener, Picasso> INSTANCES = new IdentityHashMap<>();
+    /** Activities destroyed below API 17, which cannot tell themselves. Main thread only. */
+    private static final Map<Activity, Boolean> DESTROYED = new WeakHashMap<>();
+    /** Writes the disk cache's index, which can take a while for a large cache. */
+    private static final ExecutorService DISK =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "AutoPicasso-Disk");
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+
+    private static volatile TrimmableCache cache;
+    private static volatile DiskLruCache diskCache;
+    private static ExecutorService executor;
+    private static volatile boolean callbacksRegistered;
+
+    private PicassoRegistry() {
+        //no instance
+    }
+
+    /**
+     * Get the {@link Picasso} instance to use for the given Activity. If the Activity is a
+     * {@link Picasso.Listener}, the same instance is returned on every call until
+     * {@link #release(Activity)} is called. Otherwise the default singleton is returned.
+     */
+    public static Picasso obtain(Activity activity) {
+        if (!callbacksRegistered) {
+            registerCallbacks(activity.getApplicationContext());
+        }
+        if (cache == null) {
+            //before the first Picasso.with, so that the default instance gets the shared cache.
+            getCache(activity);
+        }
+        if (!(activity instanceof Picasso.Listener)) {
+            return Picasso.with(activity);
+        }
+        Picasso.Listener listener = (Picasso.Listener) activity;
+        synchronized (INSTANCES) {
+            Picasso picasso = INSTANCES.get(listener);
+            if (picasso == null) {
+                Context context = activity.getApplicationContext();
+                picasso = new Picasso.Builder(context)
+                        .listener(listener)
+                        .memoryCache(new SharedCache(getCache(context)))
+                        .executor(getExecutor())
+                        .downloader(new TrackingDownloader(context))
+                        .build();
+                INSTANCES.put(listener, picasso);
+            }
+            return picasso;
+        }
+    }
+
+    /**
+     * Get the {@link Picasso} instance to use for a view's Context. Wrapped Contexts are unwrapped
+     * to their Activity, so that views share the instance used by the Activity's own bindings.
+     */
+    public static Picasso obtain(Context context) {
+        Activity activity = findActivity(context);
+        if (activity != null) {
+            return obtain(activity);
+        }
+        return Picasso.with(context);
+    }
+
+    /** @return the Activity the Context belongs to, or {@code null}. */
+    public static Activity findActivity(Context context) {
+        while (context instanceof ContextWrapper) {
+            if (context instanceof Activity) {
+                return (Activity) context;
+            }
+            context = ((ContextWrapper) context).getBaseContext();
+        }
+        return null;
+    }
+
+    /**
+     * @return the object requests for the given Context are tagged with: its Activity if it has
+     * one, otherwise the Context itself.
+     */
+    public static Object host(Context context) {
+        Activity activity = findActivity(context);
+        return activity != null ? activity : context;
+    }
+
+    /**
+     * Pause the requests tagged with the given Activity, which generated code does by default. This
+     * is called automatically from {@link Activity#onStop()} on API 14+.
+     */
+    public static void pause(Activity activity) {
+        Picasso picasso = peek(activity);
+        if (picasso != null) {
+            picasso.pauseTag(activity);
+        }
+    }
+
+    /**
+     * Resume the requests tagged with the given Activity. This is called automatically from
+     * {@link Activity#onStart()} on API 14+.
+     */
+    public static void resume(Activity activity) {
+        Picasso picasso = peek(activity);
+        if (picasso != null) {
+            picasso.resumeTag(activity);
+        }
+    }
+
+    /**
+     * Cancel the requests tagged with the given Activity, so that finished bitmaps are not held for
+     * a screen that is gone. This is called automatically from {@link Activity#onDestroy()} on API
+     * 14+. The tag is also resumed, since Picasso keeps a paused tag, and so the Activity, until
+     * then.
+     */
+    public static void cancel(Activity activity) {
+        Picasso picasso = peek(activity);
+        if (picasso != null) {
+            picasso.cancelTag(activity);
+            picasso.resumeTag(activity);
+        }
+        PicassoBatch.cancel(activity);
+    }
+
+    /**
+     * Shut down and forget the instance created for the given Activity, if any. This is called
+     * automatically from {@link Activity#onDestroy()} on API 14+.
+     */
+    public static void release(Activity activity) {
+        if (!(activity instanceof Picasso.Listener)) {
+            return;
+        }
+        Picasso picasso;
+        synchronized (INSTANCES) {
+            picasso = INSTANCES.remove(activity);
+        }
+        if (picasso != null) {
+            picasso.shutdown();
+        }
+    }
+
+    /**
+     * @return whether the Activity was destroyed, including by a configuration change. Below API 17
+     * this is only known on API 14+, from the callbacks registered by {@link #obtain(Activity)}.
+     * Main thread only.
+     */
+    public static boolean isDestroyed(Activity activity) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return activity.isDestroyed();
+        }
+        return DESTROYED.containsKey(activity);
+    }
+
+    /** @return the instance used by the Activity, without creating one for a listener. */
+    private static Picasso peek(Activity activity) {
+        if (!(activity instanceof Picasso.Listener)) {
+            return Picasso.with(activity);
+        }
+        synchronized (INSTANCES) {
+            return INSTANCES.get(activity);
+        }
+    }
+
+    /** @return the number of live listener instances. */
+    public static int size() {
+        synchronized (INSTANCES) {
+            return INSTANCES.size();
+        }
+    }
+
+    /**
+     * Use a disk cache of the given size for the instances AutoPicasso creates, instead of the
+     * platform's HTTP cache. It is opened on Picasso's threads, on the first request.
+     */
+    public static void setDiskCache(File directory, long maxSize) {
+        diskCache = new DiskLruCache(directory, maxSize);
+    }
+
+    /** @return the disk cache, or {@code null} if none was set. */
+    static DiskLruCache getDiskCache() {
+        return diskCache;
+    }
+
+    /**
+     * Write the disk cache's index on a background thread, so that the next cold start can read it.
+     */
+    static void flushDiskCache() {
+        final DiskLruCache diskCache = PicassoRegistry.diskCache;
+        if (diskCache != null) {
+            DISK.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        diskCache.flush();
+                    } catch (IOException e) {
+                        //rebuilt from the directory on the next start.
+                    }
+                }
+            });
+        }
+    }
+
+    private static synchronized TrimmableCache getCache(Context context) {
+        if (cache == null) {
+            installSingleton(context);
+        }
+        return cache;
+    }
+
+    /**
+     * Create the shared memory cache, and set up the default instance on it, with AutoPicasso's
+     * downloader, so that every instance AutoPicasso creates shares one HTTP cache. Does nothing
+     * once the cache exists.
+     *
+     * @return whether the default instance was set up by this call. If the app already set or used
+     * the default instance, it keeps its own cache, and the shared cache is made smaller instead.
+     */
+    static synchronized boolean installSingleton(Context context) {
+        if (cache != null) {
+            return false;
+        }
+        Context appContext = context.getApplicationContext();
+        TrimmableCache shared = new TrimmableCache(calculateCacheSize(appContext, HEAP_FRACTION));
+        Picasso picasso = new Picasso.Builder(appContext)
+                .memoryCache(new SharedCache(shared))
+                .downloader(new TrackingDownloader(appContext))
+                .build();
+        try {
+            Picasso.setSingletonInstance(picasso);
+            cache = shared;
+            return true;
+        } catch (IllegalStateException e) {
+            //stops the dispatcher thread of the unused instance.
+            picasso.shutdown();
+            cache = new TrimmableCache(calculateCacheSize(appContext, SEPARATE_HEAP_FRACTION));
+            return false;
+        }
+    }
+
+    /**
+     * Evict the least recently used bitmaps of the shared memory cache, keeping the given fraction
+     * of its maximum size.
+     *
+     * @return the number of bytes released.
+     */
+    static int trimCache(float keep) {
+        TrimmableCache cache;
+        synchronized (PicassoRegistry.class) {
+            cache = PicassoRegistry.cache;
+        }
+        if (cache == null) {
+            return 0;
+        }
+        return cache.trimToSize((int) (cache.maxSize() * keep));
+    }
+
+    private static ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = new PriorityExecutor();
+        }
+        return executor;
+    }
+
+    private static int calculateCacheSize(Context context, int heapFraction) {
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryClass = am.getMemoryClass();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                && (context.getApplicationInfo().flags & ApplicationInfo.FLAG_LARGE_HEAP) != 0) {
+            memoryClass = am.getLargeMemoryClass();
+        }
+        return 1024 * 1024 * memoryClass / heapFraction;
+    }
+
+    private static synchronized void registerCallbacks(Context context) {
+        if (callbacksRegistered || Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            return;
+        }
+        if (context instanceof Application) {
+            LifecycleCallbacks.register((Application) context);
+            PicassoTrim.register(context);
+            callbacksRegistered = true;
+        }
+    }
+
+    /**
+     * Wraps the shared cache so that {@link Picasso#shutdown()} on one instance does not clear the
+     * bitmaps still used by the others.
+     */
+    private static final class SharedCache implements Cache {
+        private final Cache delegate;
+
+        SharedCache(Cache delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Bitmap get(String key) {
+            return delegate.get(key);
+        }
+
+        @Override
+        public void set(String key, Bitmap bitmap) {
+            delegate.set(key, bitmap);
+        }
+
+        @Override
+        public int size() {
+            return delegate.size();
+        }
+
+        @Override
+        public int maxSize() {
+            return delegate.maxSize();
+        }
+
+        @Override
+        public void clear() {
+            //owned by the registry
+        }
+
+        @Override
+        public void clearKeyUri(String keyPrefix) {
+            delegate.clearKeyUri(keyPrefix);
+        }
+    }
+
+    /**
+     * Runs the requests of every registry instance by priority, and in the order they came within
+     * one priority. Picasso's own executor does the same, but cannot be shared, since every
+     * instance shuts it down along with itself.
+     */
+    private static final class PriorityExecutor extends ThreadPoolExecutor {
+        /** {@code BitmapHunter.getPriority()}, which is package-private, or {@code null} */
+        private static final Method GET_PRIORITY = findGetPriority();
+
+        private final AtomicLong sequence = new AtomicLong();
+
+        PriorityExecutor() {
+            super(THREAD_COUNT, THREAD_COUNT, 0, TimeUnit.MILLISECONDS,
+                    new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable runnable) {
+                            return new Thread(new Runnable() {
+                                @Override
+                                public void run() {
+                                    //like Picasso's threads, so decoding never slows the UI.
+                                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                    runnable.run();
+                                }
+                            }, "Picasso-Idle");
+                        }
+                    });
+        }
+
+        /** Picasso submits every request, as a hunter, through this method. */
+        @Override
+        public Future<?> submit(Runnable task) {
+            Task future = new Task(task, getPriority(task), sequence.getAndIncrement());
+            execute(future);
+            return future;
+        }
+
+        private static Picasso.Priority getPriority(Runnable hunter) {
+            if (GET_PRIORITY != null) {
+                try {
+                    return (Picasso.Priority) GET_PRIORITY.invoke(hunter);
+                } catch (Exception e) {
+                    //not a hunter. Run it in order with the normal requests.
+                }
+            }
+            return Picasso.Priority.NORMAL;
+        }
+
+        private static Method findGetPriority() {
+            try {
+                Method method = Class.forName("com.squareup.picasso.BitmapHunter")
+                        .getDeclaredMethod("getPriority");
+                method.setAccessible(true);
+                return method;
+            } catch (Exception e) {
+                return null;
+            }
+        }
+    }
+
+    private static final class Task extends FutureTask<Object> implements Comparable<Task> {
+        private final int priority;
+        private final long sequence;
+
+        Task(Runnable runnable, Picasso.Priority priority, long sequence) {
+            super(runnable, null);
+            this.priority = priority.ordinal();
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (priority != other.priority) {
+                return other.priority - priority;
+            }
+            return sequence < other.sequence ? -1 : sequence == other.sequence ? 0 : 1;
+        }
+    }
+
+    /** Kept in its own class so that it is never loaded below API 14. */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private static final class LifecycleCallbacks
+            implements Application.ActivityLifecycleCallbacks {
+
+        static void register(Application application) {
+            application.registerActivityLifecycleCallbacks(new LifecycleCallbacks());
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            cancel(activity);
+            release(activity);
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                DESTROYED.put(activity, Boolean.TRUE);
+            }
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+            resume(activity);
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+            pause(activity);
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.widget.ImageView;
+
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Used by generated code to start a request from a source that is only known at runtime.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 4:12 PM Feb 10, 2016
+ */
+public final class PicassoSources {
+
+    /**
+     * Source and drawable of the last successful load into each view. Synchronized, since requests
+     * built for an asynchronous load check it off the main thread.
+     */
+    private static final Map<ImageView, Shown> SHOWN =
+            Collections.synchronizedMap(new WeakHashMap<ImageView, Shown>());
+
+    private PicassoSources() {
+        //no instance
+    }
+
+    /**
+     * @param source a {@link String} url, {@link Uri}, {@link File} or drawable resource
+     *               {@link Integer}. {@code null} or a zero resource creates an empty request,
+     *               which cancels any request in flight for the target and shows the placeholder.
+     */
+    public static RequestCreator load(Picasso picasso, Object source) {
+        if (source == null) {
+            return picasso.load((String) null);
+        }
+        if (source instanceof String) {
+            return picasso.load((String) source);
+        }
+        if (source instanceof Uri) {
+            return picasso.load((Uri) source);
+        }
+        if (source instanceof File) {
+            return picasso.load((File) source);
+        }
+        if (source instanceof Integer) {
+            int resourceId = (Integer) source;
+            return resourceId == 0 ? picasso.load((String) null) : picasso.load(resourceId);
+        }
+        throw new IllegalArgumentException(
+                "Unsupported image source: " + source.getClass().getName());
+    }
+
+    /**
+     * @return whether the view still shows the image it last loaded successfully from the given
+     * source, in which case loading it again would only cancel and re-enqueue the same request.
+     * Anything that replaced the image since, such as an error, a placeholder or another load,
+     * makes this {@code false}.
+     */
+    public static boolean isShowing(ImageView view, Object source) {
+        Shown shown = SHOWN.get(view);
+        return source != null && shown != null && source.equals(shown.source)
+                && shown.drawable.get() == view.getDrawable();
+    }
+
+    /**
+     * Wrap the callback of a request so that the source is recorded for {@link #isShowing} once the
+     * image is set.
+     *
+     * @param callback may be {@code null}.
+     */
+    public static Callback remember(ImageView view, Object source, Callback callback) {
+        SHOWN.remove(view);
+        return new Remember(view, source, callback);
+    }
+
+    private static final class Shown {
+        final Object source;
+        /** Weak, since drawables reference their Context, and through it the view itself */
+        final WeakReference<Drawable> drawable;
+
+        Shown(Object source, Drawable drawable) {
+            this.source = source;
+            this.drawable = new WeakReference<>(drawable);
+        }
+    }
+
+    private static final class Remember implements Callback {
+        /** Weak, like Picasso's own reference, so that a pending request does not leak the view */
+        private final WeakReference<ImageView> view;
+        private final Object source;
+        private final Callback callback;
+
+        Remember(ImageView view, Object source, Callback callback) {
+            this.view = new WeakReference<>(view);
+            this.source = source;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onSuccess() {
+            ImageView view = this.view.get();
+            if (view != null && source != null) {
+                SHOWN.put(view, new Shown(source, view.getDrawable()));
+            }
+            if (callback != null) {
+                callback.onSuccess();
+            }
+        }
+
+        @Override
+        public void onError() {
+            if (callback != null) {
+                callback.onError();
+            }
+        }
+    }
+}
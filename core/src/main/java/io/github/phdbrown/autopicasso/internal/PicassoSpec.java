@@ -0,0 +1,490 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.widget.ImageView;
+
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.MemoryPolicy;
+import com.squareup.picasso.NetworkPolicy;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+import com.squareup.picasso.Transformation;
+
+/**
+ * Static description of one {@code @Picasso} binding, built once when its generated class is
+ * initialized. Generated loaders only look up their views and hand each one to its spec, which
+ * builds the request the annotation describes. This keeps the generated methods a few instructions
+ * per binding, however many options a binding sets, and keeps the request building code in one
+ * place instead of copied into every generated class.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 3:30 PM Feb 24, 2016
+ */
+public final class PicassoSpec {
+
+    private static final Transformation[] NO_TRANSFORMATIONS = new Transformation[0];
+
+    private final Class<?> target;
+    private final String field;
+    private final int id;
+
+    private boolean required = true;
+    /** {@link String} url or drawable {@link Integer} from the annotation, or {@code null} */
+    private Object source;
+    private String adaptiveUrl;
+    private int placeholder;
+    private int error;
+    private String tag;
+    private boolean fit;
+    private float width;
+    private float height;
+    /** Whether {@link #width} and {@link #height} are in dp rather than px */
+    private boolean dp;
+    private boolean centerCrop;
+    private boolean centerInside;
+    private boolean onlyScaleDown;
+    private float[] rotate;
+    private Bitmap.Config config;
+    private boolean autoConfig;
+    private boolean opaque;
+    private String stableKey;
+    private Picasso.Priority priority = Picasso.Priority.NORMAL;
+    /** First policy, or {@code null}, and the rest, split once for Picasso's varargs */
+    private MemoryPolicy memoryPolicy;
+    private MemoryPolicy[] memoryPolicies;
+    private NetworkPolicy networkPolicy;
+    private NetworkPolicy[] networkPolicies;
+    private boolean noFade;
+    private boolean log;
+    private boolean indicators;
+    private Transformation[] transformations = NO_TRANSFORMATIONS;
+    /** From {@link #coalesce}, or {@code null} if requests are never coalesced */
+    private String options;
+    /** Precomputed key of a static source, without the runtime transformations */
+    private String key;
+
+    /**
+     * @param target the class declaring the binding, for metrics.
+     * @param field  the name of the bound field.
+     * @param id     the ID of the bound view.
+     */
+    public PicassoSpec(Class<?> target, String field, int id) {
+        this.target = target;
+        this.field = field;
+        this.id = id;
+    }
+
+    public PicassoSpec optional() {
+        required = false;
+        return this;
+    }
+
+    public PicassoSpec url(String url) {
+        source = url;
+        return this;
+    }
+
+    public PicassoSpec drawable(int resId) {
+        source = resId;
+        return this;
+    }
+
+    /** @param template a url with {@code {width}} and {@code {quality}}, filled in at load time. */
+    public PicassoSpec adaptiveUrl(String template) {
+        adaptiveUrl = template;
+        return this;
+    }
+
+    public PicassoSpec placeholder(int resId) {
+        placeholder = resId;
+        return this;
+    }
+
+    public PicassoSpec error(int resId) {
+        error = resId;
+        return this;
+    }
+
+    /** Without one, requests are tagged with their host Activity. */
+    public PicassoSpec tag(String tag) {
+        this.tag = tag;
+        return this;
+    }
+
+    public PicassoSpec fit() {
+        fit = true;
+        return this;
+    }
+
+    public PicassoSpec resize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        dp = false;
+        return this;
+    }
+
+    /** Resize to a size read from the layout, converted to px at load time. */
+    public PicassoSpec resizeDp(float width, float height) {
+        this.width = width;
+        this.height = height;
+        dp = true;
+        return this;
+    }
+
+    public PicassoSpec centerCrop() {
+        centerCrop = true;
+        return this;
+    }
+
+    public PicassoSpec centerInside() {
+        centerInside = true;
+        return this;
+    }
+
+    public PicassoSpec onlyScaleDown() {
+        onlyScaleDown = true;
+        return this;
+    }
+
+    /** @param rotate the degrees, optionally followed by the pivot. */
+    public PicassoSpec rotate(float... rotate) {
+        this.rotate = rotate;
+        return this;
+    }
+
+    public PicassoSpec config(Bitmap.Config config) {
+        this.config = config;
+        return this;
+    }
+
+    /** Pick the config at load time, with {@link PicassoConfigs#select}. */
+    public PicassoSpec autoConfig(boolean opaque) {
+        autoConfig = true;
+        this.opaque = opaque;
+        return this;
+    }
+
+    public PicassoSpec stableKey(String stableKey) {
+        this.stableKey = stableKey;
+        return this;
+    }
+
+    public PicassoSpec priority(Picasso.Priority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    public PicassoSpec memoryPolicy(MemoryPolicy... memoryPolicy) {
+        if (memoryPolicy.length != 0) {
+            this.memoryPolicy = memoryPolicy[0];
+            this.memoryPolicies = tail(memoryPolicy, new MemoryPolicy[memoryPolicy.length - 1]);
+        }
+        return this;
+    }
+
+    public PicassoSpec networkPolicy(NetworkPolicy... networkPolicy) {
+        if (networkPolicy.length != 0) {
+            this.networkPolicy = networkPolicy[0];
+            this.networkPolicies = tail(networkPolicy, new NetworkPolicy[networkPolicy.length - 1]);
+        }
+        return this;
+    }
+
+    public PicassoSpec noFade() {
+        noFade = true;
+        return this;
+    }
+
+    public PicassoSpec log() {
+        log = true;
+        return this;
+    }
+
+    public PicassoSpec indicators() {
+        indicators = true;
+        return this;
+    }
+
+    /** @param transformations shared instances, from {@link PicassoTransformations#share}. */
+    public PicassoSpec transform(Transformation... transformations) {
+        this.transformations = transformations;
+        return this;
+    }
+
+    /**
+     * Let {@link PicassoBatch} coalesce requests with the same source and options. Bindings that
+     * use {@code fit()} or skip the memory cache never call this.
+     *
+     * @param options every option that changes the decoded image, as the processor printed them.
+     */
+    public PicassoSpec coalesce(String options) {
+        this.options = options;
+        return this;
+    }
+
+    /**
+     * Add the request for a binding whose source is declared by the annotation.
+     *
+     * @param view the bound view. A missing required view was already reported by {@code resolve}.
+     */
+    public void load(PicassoBatch batch, Picasso picasso, ImageView view,
+                     Transformation[] transformations) {
+        load(batch, picasso, view, null, adaptiveUrl != null, transformations);
+    }
+
+    /**
+     * Add the request for a binding whose source is read from the target at runtime.
+     *
+     * @param source the runtime source, or {@code null} to use the annotation's.
+     */
+    public void load(PicassoBatch batch, Picasso picasso, ImageView view, Object source,
+                     Transformation[] transformations) {
+        load(batch, picasso, view, source, true, transformations);
+    }
+
+    private void load(PicassoBatch batch, Picasso picasso, ImageView view, Object source,
+                      boolean dynamic, Transformation[] transformations) {
+        if (view == null) {
+            return;
+        }
+        Context context = view.getContext();
+        if (dynamic) {
+            source = getSource(context, source);
+            if (PicassoSources.isShowing(view, source)) {
+                return;
+            }
+        }
+        else {
+            source = this.source;
+        }
+        Drawable placeholder = getDrawable(context, this.placeholder);
+        Object tag = getTag(context);
+        Callback callback = PicassoMetrics.track(view, target, field, id, source);
+        if (dynamic) {
+            callback = PicassoSources.remember(view, source, callback);
+        }
+        Factory factory = new Factory(picasso, context, source, placeholder, tag, transformations);
+        batch.add(picasso, factory, view, getKey(source, dynamic, transformations), tag, priority,
+                placeholder, callback);
+    }
+
+    /**
+     * Load a view holder's view right away, unless it still shows the same source.
+     *
+     * @param source the source the adapter passed, or {@code null} to use the annotation's.
+     */
+    public void bind(ImageView view, Object source) {
+        if (view == null) {
+            if (required) {
+                throw new IllegalStateException("Required view with ID " + id + " for field '"
+                        + field + "' was not found. If this view is optional add '@Nullable'"
+                        + " annotation.");
+            }
+            return;
+        }
+        Context context = view.getContext();
+        Picasso picasso = PicassoRegistry.obtain(context);
+        source = getSource(context, source);
+        //into() cancels whatever the recycled view was still loading before starting this request,
+        //so it is only called when the row now shows something else.
+        if (PicassoSources.isShowing(view, source)) {
+            return;
+        }
+        RequestCreator creator = create(picasso, context, source);
+        Drawable placeholder = getDrawable(context, this.placeholder);
+        if (placeholder != null) {
+            creator.placeholder(placeholder);
+        }
+        creator.tag(getTag(context));
+        creator.priority(priority);
+        PicassoMetrics.into(creator, view, PicassoSources.remember(view, source,
+                PicassoMetrics.track(view, target, field, id, source)));
+    }
+
+    /**
+     * Warm the cache with the annotation's source. The processor only emits this for bindings whose
+     * source is known, and that do not {@code fit()}, since a fetch has no view to measure.
+     */
+    public void prefetch(Picasso picasso, Context context) {
+        RequestCreator creator = PicassoSources.load(picasso, source);
+        PicassoPrefetcher.enqueue(picasso, configure(creator, context, true));
+    }
+
+    /** Decode the placeholder and error drawables into the shared drawable cache. */
+    public void preloadDrawables(Context context) {
+        int width = getWidth(context);
+        int height = getHeight(context);
+        if (placeholder != 0) {
+            PicassoDrawables.preload(context, placeholder, width, height);
+        }
+        if (error != 0) {
+            PicassoDrawables.preload(context, error, width, height);
+        }
+    }
+
+    /** @return the runtime source, or the one the annotation declares if it is {@code null}. */
+    private Object getSource(Context context, Object source) {
+        if (source != null) {
+            return source;
+        }
+        if (adaptiveUrl != null) {
+            return PicassoBandwidth.url(context, adaptiveUrl, getWidth(context));
+        }
+        return this.source;
+    }
+
+    private RequestCreator create(Picasso picasso, Context context, Object source) {
+        if (log) {
+            picasso.setLoggingEnabled(true);
+        }
+        if (indicators) {
+            picasso.setIndicatorsEnabled(true);
+        }
+        RequestCreator creator = configure(PicassoSources.load(picasso, source), context, false);
+        Drawable error = getDrawable(context, this.error);
+        if (error != null) {
+            creator.error(error);
+        }
+        return creator;
+    }
+
+    /**
+     * @param prefetch only apply the options that change what ends up in the cache. Prefetches have
+     *                 no target, so they cannot use {@code fit()} or display options, and their
+     *                 priority and tag are set by the prefetcher. The priority of other requests is
+     *                 set by their caller.
+     */
+    private RequestCreator configure(RequestCreator creator, Context context, boolean prefetch) {
+        //applied before the runtime transformations, and in prefetches too, since they change the
+        //cache key.
+        for (Transformation transformation : transformations) {
+            creator.transform(transformation);
+        }
+        if (fit && !prefetch) {
+            creator.fit();
+        }
+        if (width != 0 || height != 0) {
+            creator.resize(getWidth(context), getHeight(context));
+        }
+        if (centerCrop) {
+            creator.centerCrop();
+        }
+        if (centerInside) {
+            creator.centerInside();
+        }
+        if (onlyScaleDown) {
+            creator.onlyScaleDown();
+        }
+        if (rotate != null) {
+            if (rotate.length == 3) {
+                creator.rotate(rotate[0], rotate[1], rotate[2]);
+            }
+            else {
+                creator.rotate(rotate[0]);
+            }
+        }
+        if (config != null) {
+            creator.config(config);
+        }
+        else if (autoConfig) {
+            creator.config(PicassoConfigs.select(context, opaque));
+        }
+        if (stableKey != null) {
+            creator.stableKey(stableKey);
+        }
+        if (memoryPolicy != null) {
+            creator.memoryPolicy(memoryPolicy, memoryPolicies);
+        }
+        if (networkPolicy != null) {
+            creator.networkPolicy(networkPolicy, networkPolicies);
+        }
+        if (noFade && !prefetch) {
+            creator.noFade();
+        }
+        return creator;
+    }
+
+    /**
+     * Requests without an explicit tag are tagged with their host Activity, so that they are
+     * paused, resumed and cancelled along with it, and by PauseOnScrollListener while a list
+     * flings.
+     */
+    private Object getTag(Context context) {
+        return tag != null ? tag : PicassoRegistry.host(context);
+    }
+
+    private String getKey(Object source, boolean dynamic, Transformation[] transformations) {
+        if (options == null || (!dynamic && source == null)) {
+            return null;
+        }
+        if (dynamic) {
+            return PicassoBatch.key(source, options, transformations);
+        }
+        if (key == null) {
+            //racy but idempotent, like String's hash.
+            key = String.valueOf(source) + '\n' + options;
+        }
+        return PicassoBatch.key(key, transformations);
+    }
+
+    /**
+     * Placeholder and error drawables come from the shared drawable cache, downsampled to the size
+     * the image is decoded to, rather than being decoded by Picasso for every request.
+     */
+    private Drawable getDrawable(Context context, int resId) {
+        if (resId == 0) {
+            return null;
+        }
+        return PicassoDrawables.get(context, resId, getWidth(context), getHeight(context));
+    }
+
+    /** @return the width in px the image is decoded to, or {@code 0} if only known at runtime. */
+    private int getWidth(Context context) {
+        return dp ? PicassoDimensions.dpToPx(context, width) : (int) width;
+    }
+
+    private int getHeight(Context context) {
+        return dp ? PicassoDimensions.dpToPx(context, height) : (int) height;
+    }
+
+    /** Builds the request of one load, once when it is added and again whenever it is restarted. */
+    private final class Factory implements PicassoBatch.Factory {
+        private final Picasso picasso;
+        private final Context context;
+        private final Object source;
+        private final Drawable placeholder;
+        private final Object tag;
+        private final Transformation[] transformations;
+
+        Factory(Picasso picasso, Context context, Object source, Drawable placeholder, Object tag,
+                Transformation[] transformations) {
+            this.picasso = picasso;
+            this.context = context;
+            this.source = source;
+            this.placeholder = placeholder;
+            this.tag = tag;
+            this.transformations = transformations;
+        }
+
+        @Override
+        public RequestCreator create() {
+            RequestCreator creator = PicassoSpec.this.create(picasso, context, source);
+            if (placeholder != null) {
+                creator.placeholder(placeholder);
+            }
+            for (Transformation transformation : transformations) {
+                creator.transform(transformation);
+            }
+            return creator.tag(tag);
+        }
+    }
+
+    /** @return every value but the first, copied into {@code rest}. */
+    private static <T> T[] tail(T[] values, T[] rest) {
+        System.arraycopy(values, 1, rest, 0, rest.length);
+        return rest;
+    }
+}
@@ -0,0 +1,30 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import com.squareup.picasso.Transformation;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Pool of the transformations declared on {@code @Picasso} bindings. Every generated class that
+ * uses a transformation class shares one instance of it, created once when that class is
+ * initialized.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 9:45 AM Feb 18, 2016
+ */
+public final class PicassoTransformations {
+
+    private static final ConcurrentMap<Class<?>, Transformation> POOL = new ConcurrentHashMap<>();
+
+    private PicassoTransformations() {
+        //no instance
+    }
+
+    /** @return the instance already shared for the transformation's class, or this one. */
+    public static Transformation share(Transformation transformation) {
+        Transformation shared = POOL.putIfAbsent(transformation.getClass(), transformation);
+        return shared != null ? shared : transformation;
+    }
+}
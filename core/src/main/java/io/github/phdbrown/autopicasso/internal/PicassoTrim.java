@@ -0,0 +1,124 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.os.Looper;
+import android.util.Log;
+
+import io.github.phdbrown.autopicasso.TrimListener;
+
+/**
+ * Releases the memory AutoPicasso holds when the system asks the app to trim memory. The higher
+ * the level, the more of the shared memory cache is evicted. Prefetches are always cancelled,
+ * since they only hold images no screen is showing yet. From {@code TRIM_MEMORY_RUNNING_LOW} the
+ * cached placeholder and error drawables are dropped. While the last level reported is
+ * {@code TRIM_MEMORY_RUNNING_LOW} or {@code TRIM_MEMORY_RUNNING_CRITICAL}, {@code autoConfig}
+ * bindings decode as RGB_565. Once the UI is hidden, the disk cache's index is written in the
+ * background. The cached drawables are also dropped when the configuration changes. Registered
+ * automatically on API 14+.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 3:20 PM Feb 22, 2016
+ */
+public final class PicassoTrim {
+
+    private static final String TAG = "AutoPicasso";
+
+    private static volatile TrimListener listener;
+    private static boolean registered;
+
+    private PicassoTrim() {
+        //no instance
+    }
+
+    public static void setListener(TrimListener listener) {
+        PicassoTrim.listener = listener;
+    }
+
+    static synchronized void register(Context context) {
+        if (registered || Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            return;
+        }
+        TrimCallbacks.register(context.getApplicationContext());
+        registered = true;
+    }
+
+    /**
+     * Apply the policy for the given {@code ComponentCallbacks2} level. Called automatically on API
+     * 14+, and can be called with {@code TRIM_MEMORY_COMPLETE} from {@code onLowMemory} below that.
+     * Main thread only, since Picasso only cancels requests there.
+     *
+     * @return the bytes of bitmap released.
+     * @throws IllegalStateException off the main thread, before anything is released.
+     */
+    public static long onTrimMemory(int level) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            throw new IllegalStateException("Memory must be trimmed from the main thread.");
+        }
+        PicassoConfigs.onTrimMemory(level);
+        PicassoPrefetcher.cancel();
+        long released = PicassoRegistry.trimCache(getCacheFraction(level));
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            released += PicassoDrawables.clear();
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            //the process may be killed from here on, so the next start needs an up to date index.
+            PicassoRegistry.flushDiskCache();
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Trim level " + level + " released " + released + " bytes.");
+        }
+        TrimListener listener = PicassoTrim.listener;
+        if (listener != null) {
+            listener.onTrimMemory(level, released);
+        }
+        return released;
+    }
+
+    /** @return the fraction of the memory cache's maximum size to keep at the given level. */
+    static float getCacheFraction(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            //the process is next in line to be killed, so nothing cached is likely to be used.
+            return 0;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            //the app is in the background. Keep what the user comes back to first.
+            return 0.5f;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            return 0.25f;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return 0.5f;
+        }
+        return 0.75f;
+    }
+
+    /** Kept in its own class so that it is never loaded below API 14. */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private static final class TrimCallbacks implements ComponentCallbacks2 {
+
+        static void register(Context context) {
+            context.registerComponentCallbacks(new TrimCallbacks());
+        }
+
+        @Override
+        public void onTrimMemory(int level) {
+            PicassoTrim.onTrimMemory(level);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+            PicassoDrawables.onConfigurationChanged();
+        }
+
+        @Override
+        public void onLowMemory() {
+            PicassoTrim.onTrimMemory(TRIM_MEMORY_COMPLETE);
+        }
+    }
+}
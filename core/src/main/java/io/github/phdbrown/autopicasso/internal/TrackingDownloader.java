@@ -0,0 +1,374 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.squareup.picasso.Downloader;
+import com.squareup.picasso.NetworkPolicy;
+import com.squareup.picasso.OkHttpDownloader;
+import com.squareup.picasso.UrlConnectionDownloader;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Downloader of the instances AutoPicasso creates. Wraps the downloader Picasso would have picked
+ * itself, OkHttp's if it is on the classpath, with an HTTP cache directory of its own, since OkHttp
+ * does not support two caches in one directory and the app may have built an instance on Picasso's.
+ * Records whether each response was served from that HTTP cache, so that {@link PicassoMetrics}
+ * can tell disk hits from network loads, and times network responses for {@link PicassoBandwidth}.
+ * While the connection is slow, any cached response is used, however stale, before the network is
+ * tried. When an AutoPicasso disk cache is set, it replaces the HTTP cache: it is always read
+ * first, and network responses are written to it as Picasso reads them.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 9:15 AM Feb 19, 2016
+ */
+class TrackingDownloader implements Downloader {
+
+    private static final String TAG = "AutoPicasso";
+    /** Same class Picasso looks for to pick OkHttp */
+    private static final String OKHTTP_CLIENT = "com.squareup.okhttp.OkHttpClient";
+    /** Next to Picasso's own picasso-cache */
+    private static final String CACHE_DIRECTORY = "autopicasso-cache";
+    /** Responses not yet claimed by a tracked request, by uri. Bounded to avoid growing forever. */
+    private static final int MAX_RESULTS = 64;
+    private static final ConcurrentMap<String, Boolean> RESULTS = new ConcurrentHashMap<>();
+
+    /** Indices of the network policies, which Picasso does not expose */
+    private static final int OFFLINE = findIndex(NetworkPolicy.OFFLINE);
+    private static final int NO_CACHE = findIndex(NetworkPolicy.NO_CACHE);
+    private static final int NO_STORE = findIndex(NetworkPolicy.NO_STORE);
+
+    /** Whether a response came from the HTTP cache, which Picasso does not expose. May be null. */
+    private static final Field CACHED = findCachedField();
+
+    /** Shared, since each instance's downloader would open its own cache in the same directory */
+    private static Downloader shared;
+
+    private final Downloader delegate;
+
+    TrackingDownloader(Context context) {
+        this.delegate = getShared(context);
+    }
+
+    /** @return the downloader Picasso picks by default, created once for the application. */
+    private static synchronized Downloader getShared(Context context) {
+        if (shared == null) {
+            Context appContext = context.getApplicationContext();
+            try {
+                Class.forName(OKHTTP_CLIENT);
+                shared = OkHttpDownloaderCreator.create(appContext);
+            } catch (ClassNotFoundException e) {
+                shared = new UrlConnectionDownloader(appContext);
+            }
+        }
+        return shared;
+    }
+
+    /** @return whether the last response for the uri came from the cache, or {@code null}. */
+    static Boolean takeResult(String uri) {
+        return RESULTS.remove(uri);
+    }
+
+    @Override
+    public Response load(Uri uri, int networkPolicy) throws IOException {
+        DiskLruCache diskCache = PicassoRegistry.getDiskCache();
+        if (diskCache != null) {
+            return loadCached(diskCache, uri, networkPolicy);
+        }
+        if (PicassoBandwidth.isCacheFirst() && NetworkPolicy.shouldReadFromDiskCache(networkPolicy)
+                && !NetworkPolicy.isOfflineOnly(networkPolicy)) {
+            try {
+                return track(uri, networkPolicy | OFFLINE);
+            } catch (IOException e) {
+                //not cached. Picasso only retries on another error, so load from the network now.
+            }
+        }
+        return track(uri, networkPolicy);
+    }
+
+    private Response loadCached(DiskLruCache diskCache, Uri uri, int networkPolicy)
+            throws IOException {
+        String key = uri.toString();
+        if (NetworkPolicy.shouldReadFromDiskCache(networkPolicy)) {
+            FileInputStream cached = diskCache.get(key);
+            if (cached != null) {
+                putResult(key, true);
+                return new Response(cached, true, cached.getChannel().size());
+            }
+        }
+        if (NetworkPolicy.isOfflineOnly(networkPolicy)) {
+            throw new ResponseException("Not in the disk cache: " + key, networkPolicy, 504);
+        }
+        Response response = track(uri, networkPolicy | NO_CACHE | NO_STORE);
+        InputStream stream = response.getInputStream();
+        if (stream == null || !NetworkPolicy.shouldWriteToDiskCache(networkPolicy)) {
+            return response;
+        }
+        File temp;
+        try {
+            temp = diskCache.create(key);
+        } catch (IOException e) {
+            return response;
+        }
+        long length = response.getContentLength();
+        return new Response(new CachingInputStream(stream, diskCache, key, temp, length), false,
+                length);
+    }
+
+    @Override
+    public void shutdown() {
+        //shared by every instance, so it stays open for the application's lifetime.
+    }
+
+    private Response track(Uri uri, int networkPolicy) throws IOException {
+        long start = SystemClock.uptimeMillis();
+        Response response = delegate.load(uri, networkPolicy);
+        Boolean cached = isCached(response);
+        if (cached != null) {
+            putResult(uri.toString(), cached);
+            if (!cached && PicassoBandwidth.isEnabled() && response.getInputStream() != null) {
+                return new Response(new TimedInputStream(response.getInputStream(), start),
+                        false, response.getContentLength());
+            }
+        }
+        return response;
+    }
+
+    private static void putResult(String uri, boolean cached) {
+        if (RESULTS.size() >= MAX_RESULTS) {
+            RESULTS.clear();
+        }
+        RESULTS.put(uri, cached);
+    }
+
+    private static int findIndex(NetworkPolicy policy) {
+        for (int i = 0; i < Integer.SIZE - 1; i++) {
+            int index = 1 << i;
+            boolean match;
+            switch (policy) {
+                case OFFLINE:
+                    match = NetworkPolicy.isOfflineOnly(index);
+                    break;
+                case NO_CACHE:
+                    match = !NetworkPolicy.shouldReadFromDiskCache(index);
+                    break;
+                default:
+                    match = !NetworkPolicy.shouldWriteToDiskCache(index);
+                    break;
+            }
+            if (match) {
+                return index;
+            }
+        }
+        return 0;
+    }
+
+    private static Field findCachedField() {
+        try {
+            Field field = Response.class.getDeclaredField("cached");
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException | SecurityException e) {
+            Log.w(TAG, "Unable to tell cached responses apart. Loads are not measured.", e);
+            return null;
+        }
+    }
+
+    /** @return whether the response came from the HTTP cache, or {@code null} if unknown. */
+    private static Boolean isCached(Response response) {
+        if (CACHED == null) {
+            return null;
+        }
+        try {
+            return CACHED.getBoolean(response);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /** Kept in its own class so that OkHttp is only loaded when it is on the classpath. */
+    private static final class OkHttpDownloaderCreator {
+        static Downloader create(Context context) {
+            File directory = new File(context.getCacheDir(), CACHE_DIRECTORY);
+            if (!directory.exists()) {
+                //sized by the free space of its file system, as Picasso sizes its own.
+                directory.mkdirs();
+            }
+            return new OkHttpDownloader(directory);
+        }
+    }
+
+    /**
+     * Copies the body to a disk cache entry as it is read. The entry is committed once the whole
+     * body was read, and dropped if the stream is closed before that or the copy fails.
+     */
+    private static final class CachingInputStream extends FilterInputStream {
+        private static final int SKIP_BUFFER_SIZE = 4096;
+
+        private final DiskLruCache cache;
+        private final String key;
+        private final File temp;
+        /** Content length, or {@code 0} if unknown */
+        private final long length;
+        private OutputStream out;
+        private long bytes;
+
+        CachingInputStream(InputStream in, DiskLruCache cache, String key, File temp, long length)
+                throws IOException {
+            super(in);
+            this.cache = cache;
+            this.key = key;
+            this.temp = temp;
+            this.length = length;
+            this.out = new BufferedOutputStream(new FileOutputStream(temp));
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result < 0) {
+                finish(true);
+            }
+            else {
+                write(new byte[] {(byte) result}, 0, 1);
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int result = super.read(buffer, offset, count);
+            if (result < 0) {
+                finish(true);
+            }
+            else {
+                write(buffer, offset, result);
+            }
+            return result;
+        }
+
+        @Override
+        public boolean markSupported() {
+            //a reset would copy the same bytes twice.
+            return false;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            //the skipped bytes come over the network either way, and the entry needs them.
+            byte[] buffer = new byte[(int) Math.min(count, SKIP_BUFFER_SIZE)];
+            int result = read(buffer, 0, buffer.length);
+            return result < 0 ? 0 : result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish(length > 0 && bytes == length);
+            super.close();
+        }
+
+        private void write(byte[] buffer, int offset, int count) {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.write(buffer, offset, count);
+                bytes += count;
+                //decoders may stop at the end of the image without reading the end of the stream.
+                if (length > 0 && bytes == length) {
+                    finish(true);
+                }
+            } catch (IOException e) {
+                finish(false);
+            }
+        }
+
+        private void finish(boolean complete) {
+            if (out == null) {
+                return;
+            }
+            OutputStream finished = out;
+            out = null;
+            try {
+                finished.close();
+                if (complete && (length <= 0 || bytes == length)) {
+                    cache.commit(key, temp);
+                    return;
+                }
+            } catch (IOException e) {
+                //dropped below
+            }
+            cache.abort(temp);
+        }
+    }
+
+    /** Reports the bytes read and the time since the request once the body is read or closed. */
+    private static final class TimedInputStream extends FilterInputStream {
+        private final long start;
+        private long bytes;
+        private boolean reported;
+
+        TimedInputStream(InputStream in, long start) {
+            super(in);
+            this.start = start;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result < 0) {
+                report();
+            }
+            else {
+                bytes++;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int result = super.read(buffer, offset, count);
+            if (result < 0) {
+                report();
+            }
+            else {
+                bytes += result;
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long result = super.skip(count);
+            bytes += result;
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            report();
+            super.close();
+        }
+
+        private void report() {
+            if (!reported) {
+                reported = true;
+                PicassoBandwidth.record(bytes, SystemClock.uptimeMillis() - start);
+            }
+        }
+    }
+}
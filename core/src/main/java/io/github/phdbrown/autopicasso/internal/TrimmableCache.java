@@ -0,0 +1,103 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.graphics.Bitmap;
+
+import com.squareup.picasso.Cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memory cache shared by the instances AutoPicasso creates. Works like Picasso's own
+ * {@code LruCache}, which can only be emptied, but can also be trimmed to a fraction of its size
+ * under memory pressure.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 3:20 PM Feb 22, 2016
+ */
+final class TrimmableCache implements Cache {
+
+    /** Access-ordered, so the least recently used bitmap is evicted first */
+    private final LinkedHashMap<String, Bitmap> map = new LinkedHashMap<>(0, 0.75f, true);
+    private final int maxSize;
+    private int size;
+
+    TrimmableCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be positive.");
+        }
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public synchronized Bitmap get(String key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+        return map.get(key);
+    }
+
+    @Override
+    public synchronized void set(String key, Bitmap bitmap) {
+        if (key == null || bitmap == null) {
+            throw new NullPointerException("key == null || bitmap == null");
+        }
+        size += sizeOf(bitmap);
+        Bitmap previous = map.put(key, bitmap);
+        if (previous != null) {
+            size -= sizeOf(previous);
+        }
+        trimToSize(maxSize);
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public int maxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public synchronized void clear() {
+        trimToSize(-1);
+    }
+
+    @Override
+    public synchronized void clearKeyUri(String uri) {
+        int length = uri.length();
+        Iterator<Map.Entry<String, Bitmap>> iterator = map.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Bitmap> entry = iterator.next();
+            String key = entry.getKey();
+            //Picasso's keys are the uri followed by a newline and the request options.
+            if (key.startsWith(uri) && key.length() > length && key.charAt(length) == '\n') {
+                size -= sizeOf(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Evict the least recently used bitmaps until no more than the given size is left.
+     *
+     * @return the number of bytes released.
+     */
+    synchronized int trimToSize(int maxSize) {
+        int before = size;
+        Iterator<Bitmap> iterator = map.values().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            size -= sizeOf(iterator.next());
+            iterator.remove();
+        }
+        return before - size;
+    }
+
+    private static int sizeOf(Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+}
@@ -0,0 +1,137 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the disk cache against a temporary directory.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 10:05 AM Feb 23, 2016
+ */
+public class DiskLruCacheTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void evictsLeastRecentlyUsed() throws IOException {
+        DiskLruCache cache = new DiskLruCache(folder.getRoot(), 30);
+        put(cache, "a", 10);
+        put(cache, "b", 10);
+        put(cache, "c", 10);
+        //a is now the most recently used.
+        assertTrue(contains(cache, "a"));
+        put(cache, "d", 10);
+
+        assertTrue(contains(cache, "a"));
+        assertFalse(contains(cache, "b"));
+        assertTrue(contains(cache, "c"));
+        assertTrue(contains(cache, "d"));
+        assertEquals(30, cache.size());
+    }
+
+    @Test public void reopensFromIndex() throws IOException {
+        DiskLruCache cache = new DiskLruCache(folder.getRoot(), 100);
+        put(cache, "a", 10);
+        put(cache, "b", 20);
+        assertTrue(contains(cache, "a"));
+        cache.flush();
+        assertTrue(new File(folder.getRoot(), DiskLruCache.INDEX).isFile());
+        assertFalse(new File(folder.getRoot(), DiskLruCache.DIRTY).exists());
+
+        DiskLruCache reopened = new DiskLruCache(folder.getRoot(), 100);
+        assertEquals(30, reopened.size());
+        assertEquals(10, length(reopened, "a"));
+        assertEquals(20, length(reopened, "b"));
+
+        //a was used last before the restart, so b goes first.
+        DiskLruCache smaller = new DiskLruCache(folder.getRoot(), 15);
+        assertTrue(contains(smaller, "a"));
+        assertFalse(contains(smaller, "b"));
+    }
+
+    @Test public void rebuildsAfterUnflushedChanges() throws IOException {
+        DiskLruCache cache = new DiskLruCache(folder.getRoot(), 100);
+        put(cache, "a", 10);
+        cache.flush();
+        put(cache, "b", 20);
+        File unfinished = cache.create("c");
+        //the process dies here.
+        assertTrue(new File(folder.getRoot(), DiskLruCache.DIRTY).exists());
+
+        DiskLruCache reopened = new DiskLruCache(folder.getRoot(), 100);
+        assertEquals(30, reopened.size());
+        assertTrue(contains(reopened, "b"));
+        assertFalse(unfinished.exists());
+        assertFalse(new File(folder.getRoot(), DiskLruCache.DIRTY).exists());
+    }
+
+    @Test public void ignoresCorruptIndex() throws IOException {
+        DiskLruCache cache = new DiskLruCache(folder.getRoot(), 100);
+        put(cache, "a", 10);
+        cache.flush();
+        FileOutputStream out = new FileOutputStream(new File(folder.getRoot(), DiskLruCache.INDEX));
+        out.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13});
+        out.close();
+
+        DiskLruCache reopened = new DiskLruCache(folder.getRoot(), 100);
+        assertEquals(10, reopened.size());
+        assertTrue(contains(reopened, "a"));
+    }
+
+    @Test public void removes() throws IOException {
+        DiskLruCache cache = new DiskLruCache(folder.getRoot(), 100);
+        put(cache, "a", 10);
+        assertTrue(cache.remove("a"));
+        assertFalse(cache.remove("a"));
+        assertFalse(contains(cache, "a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test public void keepsEvictedEntryReadableWhileOpen() throws IOException {
+        DiskLruCache cache = new DiskLruCache(folder.getRoot(), 10);
+        put(cache, "a", 10);
+        FileInputStream in = cache.get("a");
+        put(cache, "b", 10);
+
+        assertFalse(contains(cache, "a"));
+        assertEquals(10, in.skip(10));
+        in.close();
+    }
+
+    private static void put(DiskLruCache cache, String key, int length) throws IOException {
+        File temp = cache.create(key);
+        FileOutputStream out = new FileOutputStream(temp);
+        out.write(new byte[length]);
+        out.close();
+        cache.commit(key, temp);
+    }
+
+    private static boolean contains(DiskLruCache cache, String key) throws IOException {
+        FileInputStream in = cache.get(key);
+        if (in == null) {
+            return false;
+        }
+        in.close();
+        return true;
+    }
+
+    private static long length(DiskLruCache cache, String key) throws IOException {
+        FileInputStream in = cache.get(key);
+        try {
+            return in.getChannel().size();
+        } finally {
+            in.close();
+        }
+    }
+}
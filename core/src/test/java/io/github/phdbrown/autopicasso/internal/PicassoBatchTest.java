@@ -0,0 +1,225 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.graphics.Rect;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
+
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.phdbrown.autopicasso.LoadEvent;
+import io.github.phdbrown.autopicasso.LoadListener;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs batches of default priority bindings against real requests, which only let their priority be
+ * set once, and views whose visibility the test controls.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 11:20 AM Feb 25, 2016
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 21)
+public class PicassoBatchTest {
+
+    private final List<RequestCreator> created = new ArrayList<>();
+    private final PicassoBatch.Factory factory = new PicassoBatch.Factory() {
+        @Override
+        public RequestCreator create() {
+            RequestCreator creator = spy(newRequestCreator());
+            doNothing().when(creator).into(any(ImageView.class), any(Callback.class));
+            created.add(creator);
+            return creator;
+        }
+    };
+    private Picasso picasso;
+    private ImageView view;
+    private ImageView offscreen;
+    private ViewTreeObserver observer;
+
+    @Before public void setUp() throws Exception {
+        Constructor<ViewTreeObserver> constructor = ViewTreeObserver.class.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        observer = constructor.newInstance();
+        picasso = mock(Picasso.class);
+        //never laid out, so a batch waits for the first pre-draw.
+        view = mock(ImageView.class);
+        when(view.getViewTreeObserver()).thenReturn(observer);
+        setShown(view, true);
+        offscreen = mock(ImageView.class);
+        when(offscreen.getViewTreeObserver()).thenReturn(observer);
+        setShown(offscreen, false);
+    }
+
+    @After public void tearDown() {
+        PicassoMetrics.setListener(null);
+    }
+
+    @Test public void submitsNormalBindingOnce() {
+        PicassoBatch batch = new PicassoBatch();
+        batch.add(null, factory, view, null, "tag", Picasso.Priority.NORMAL, null, null);
+        batch.submit();
+        observer.dispatchOnPreDraw();
+
+        assertEquals(1, created.size());
+        verify(created.get(0)).priority(Picasso.Priority.HIGH);
+        verify(created.get(0)).into(any(ImageView.class), any(Callback.class));
+    }
+
+    @Test public void startsRightAwayWhenOnlyGoneViewsWereNeverLaidOut() {
+        //an idle window: laid out, and nothing asks for another traversal.
+        FrameLayout root = new FrameLayout(RuntimeEnvironment.application);
+        ImageView shown = new ImageView(RuntimeEnvironment.application);
+        ImageView gone = new ImageView(RuntimeEnvironment.application);
+        gone.setVisibility(View.GONE);
+        root.addView(shown, new FrameLayout.LayoutParams(100, 100));
+        root.addView(gone);
+        int spec = View.MeasureSpec.makeMeasureSpec(200, View.MeasureSpec.EXACTLY);
+        root.measure(spec, spec);
+        root.layout(0, 0, 200, 200);
+
+        PicassoBatch batch = new PicassoBatch();
+        batch.add(null, factory, shown, null, "tag", Picasso.Priority.NORMAL, null, null);
+        batch.add(null, factory, gone, null, "tag", Picasso.Priority.NORMAL, null, null);
+        batch.submit();
+
+        assertEquals(2, created.size());
+        verify(created.get(0)).into(any(ImageView.class), any(Callback.class));
+        verify(created.get(1)).into(any(ImageView.class), any(Callback.class));
+    }
+
+    @Test public void leavesStartedRequestAloneWhenViewScrollsAway() {
+        PicassoBatch batch = new PicassoBatch();
+        batch.add(null, factory, view, null, "tag", Picasso.Priority.NORMAL, null, null);
+        batch.submit();
+        observer.dispatchOnPreDraw();
+        setShown(view, false);
+        batch.reschedule();
+
+        //restarting it would throw away what it already downloaded.
+        assertEquals(1, created.size());
+        verify(created.get(0)).into(any(ImageView.class), any(Callback.class));
+    }
+
+    @Test public void startsHeldRequestWhenViewScrollsIntoView() {
+        PicassoBatch batch = new PicassoBatch();
+        batch.add(picasso, factory, view, null, "tag", Picasso.Priority.NORMAL, null, null);
+        batch.add(picasso, factory, offscreen, null, "tag", Picasso.Priority.NORMAL, null, null);
+        batch.submit();
+        observer.dispatchOnPreDraw();
+
+        assertEquals(1, created.size());
+        verify(offscreen).setImageDrawable(null);
+        setShown(offscreen, true);
+        batch.reschedule();
+
+        assertEquals(2, created.size());
+        verify(created.get(1)).priority(Picasso.Priority.HIGH);
+        verify(created.get(1)).into(any(ImageView.class), any(Callback.class));
+    }
+
+    @Test public void startsHeldRequestsOnceVisibleOnesFinish() {
+        PicassoBatch batch = new PicassoBatch();
+        batch.add(picasso, factory, view, null, "tag", Picasso.Priority.NORMAL, null, null);
+        batch.add(picasso, factory, offscreen, null, "tag", Picasso.Priority.NORMAL, null, null);
+        batch.submit();
+        observer.dispatchOnPreDraw();
+        ArgumentCaptor<Callback> callback = ArgumentCaptor.forClass(Callback.class);
+        verify(created.get(0)).into(any(ImageView.class), callback.capture());
+        batch.reschedule();
+        assertEquals(1, created.size());
+
+        callback.getValue().onSuccess();
+
+        assertEquals(2, created.size());
+        verify(created.get(1)).priority(Picasso.Priority.LOW);
+        verify(created.get(1)).into(any(ImageView.class), any(Callback.class));
+        verify(created.get(0), never()).priority(Picasso.Priority.LOW);
+    }
+
+    @Test public void reportsMemoryHitOfHeldRequest() {
+        final List<LoadEvent> events = new ArrayList<>();
+        PicassoMetrics.setListener(new LoadListener() {
+            @Override
+            public void onLoad(LoadEvent event) {
+                events.add(event);
+            }
+        });
+        //delivers from the memory cache, from within into().
+        PicassoBatch.Factory cached = new PicassoBatch.Factory() {
+            @Override
+            public RequestCreator create() {
+                RequestCreator creator = spy(newRequestCreator());
+                doAnswer(new Answer<Void>() {
+                    @Override
+                    public Void answer(InvocationOnMock invocation) {
+                        ((Callback) invocation.getArguments()[1]).onSuccess();
+                        return null;
+                    }
+                }).when(creator).into(any(ImageView.class), any(Callback.class));
+                created.add(creator);
+                return creator;
+            }
+        };
+        Callback tracker = PicassoMetrics.track(offscreen, PicassoBatchTest.class, "offscreen", 1,
+                "http://example.com/image.png");
+        PicassoBatch batch = new PicassoBatch();
+        batch.add(picasso, factory, view, null, "tag", Picasso.Priority.NORMAL, null, null);
+        batch.add(picasso, cached, offscreen, null, "tag", Picasso.Priority.NORMAL, null, tracker);
+        batch.submit();
+        observer.dispatchOnPreDraw();
+        ArgumentCaptor<Callback> callback = ArgumentCaptor.forClass(Callback.class);
+        verify(created.get(0)).into(any(ImageView.class), callback.capture());
+        assertEquals(0, events.size());
+
+        //the held request starts in a later message than the one its tracker was created in.
+        callback.getValue().onSuccess();
+
+        assertEquals(1, events.size());
+        assertEquals(Picasso.LoadedFrom.MEMORY, events.get(0).loadedFrom);
+    }
+
+    private static void setShown(ImageView view, boolean shown) {
+        when(view.isShown()).thenReturn(shown);
+        when(view.getGlobalVisibleRect(any(Rect.class))).thenReturn(shown);
+    }
+
+    /** @return a request without a Picasso instance, through the constructor Picasso tests use. */
+    private static RequestCreator newRequestCreator() {
+        try {
+            Constructor<RequestCreator> constructor = RequestCreator.class.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor.newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
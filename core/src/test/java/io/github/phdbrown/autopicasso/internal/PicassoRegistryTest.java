@@ -0,0 +1,65 @@
+package io.github.phdbrown.autopicasso.internal;
+
+import android.graphics.Bitmap;
+
+import com.squareup.picasso.Picasso;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the default instance the registry sets up. There is no network, so a load only succeeds if
+ * it is served from AutoPicasso's disk cache.
+ * <br>
+ *
+ * @author Phil Brown
+ * @since 2:10 PM Feb 26, 2016
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 21)
+public class PicassoRegistryTest {
+
+    private static final String URL = "http://example.com/image.png";
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void defaultInstanceReadsFromDiskCache() throws Exception {
+        PicassoRegistry.setDiskCache(folder.getRoot(), 1024);
+        DiskLruCache diskCache = PicassoRegistry.getDiskCache();
+        File temp = diskCache.create(URL);
+        FileOutputStream out = new FileOutputStream(temp);
+        out.write(new byte[64]);
+        out.close();
+        diskCache.commit(URL, temp);
+
+        assertTrue(PicassoRegistry.installSingleton(RuntimeEnvironment.application));
+        final Picasso picasso = Picasso.with(RuntimeEnvironment.application);
+        //get() must not run on the main thread.
+        ExecutorService background = Executors.newSingleThreadExecutor();
+        Bitmap bitmap = background.submit(new Callable<Bitmap>() {
+            @Override
+            public Bitmap call() throws Exception {
+                return picasso.load(URL).get();
+            }
+        }).get();
+        background.shutdown();
+
+        assertNotNull(bitmap);
+        assertEquals(Boolean.TRUE, TrackingDownloader.takeResult(URL));
+    }
+}